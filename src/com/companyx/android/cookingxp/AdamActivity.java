@@ -25,8 +25,14 @@ public class AdamActivity extends BaseActivity {
 		LinearLayout layoutInfo = (LinearLayout) findViewById(R.id.layout_adam);
 		layoutInfo.setBackgroundResource(R.drawable.box_background_dark);
 		
-		TextView tvInfo = new TextView(this);
-		tvInfo.setText("Recipes unlocked: " + recipeDatabase.allRecipes().size());
+		final TextView tvInfo = new TextView(this);
+		tvInfo.setText(R.string.loading_recipes);
+		gameData.whenReady(new Runnable() {
+			@Override
+			public void run() {
+				tvInfo.setText("Recipes unlocked: " + recipeDatabase.getUnlockedRecipeCount());
+			}
+		});
 		tvInfo.setTextColor(Color.WHITE);
 		tvInfo.setTextSize(16 + 0.5f);
 		layoutInfo.addView(tvInfo);
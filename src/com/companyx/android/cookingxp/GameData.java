@@ -39,6 +39,7 @@ public final class GameData {
 	private Map<Short, Box> boxMap; // maps unique boxId to Box
 	private Map<Integer, Tree> treeMap; // maps unique treeId to Tree
 	private Integer score;
+	private boolean validated; // true once Trees have been validated against the loaded RecipeDatabase
 	
 	// SINGLETON
 	private static GameData holder;
@@ -335,6 +336,14 @@ public final class GameData {
 		return result;
 	}
 	
+	/**
+	 * Returns true once the game data reflects the loaded RecipeDatabase, i.e. Recipe unlocks have been applied.
+	 * @return true if the game data is ready, false if the RecipeDatabase is still loading.
+	 */
+	public boolean isReady() {
+		return validated;
+	}
+	
 	/**
 	 * Loads Boxes into the game data.
 	 */
@@ -478,6 +487,7 @@ public final class GameData {
 		loadTrees();
 		
 		validate();
+		validated = recipeDatabase.isReady(); // otherwise Recipe unlocks are applied by whenReady()
 	}
 	
 	/**
@@ -525,4 +535,24 @@ public final class GameData {
 		
 		return unlockedRecipes;
 	}
+	
+	/**
+	 * Runs the listener on the UI thread once the RecipeDatabase is loaded and the Trees have been validated against it.
+	 * Runs the listener immediately if the game data is already ready; call from the UI thread.
+	 * @param listener the listener to run, typically rendering the data of the calling Activity.
+	 */
+	public void whenReady(final Runnable listener) {
+		recipeDatabase.whenReady(new Runnable() {
+			@Override
+			public void run() {
+				// apply the Recipe unlocks skipped while the RecipeDatabase was empty
+				if (!validated) {
+					validate();
+					validated = true;
+				}
+				
+				listener.run();
+			}
+		});
+	}
 }
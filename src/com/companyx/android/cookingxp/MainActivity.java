@@ -1,6 +1,5 @@
 package com.companyx.android.cookingxp;
 
-import java.io.InputStream;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
@@ -130,18 +129,8 @@ public class MainActivity extends BaseActivity {
 		super.onCreate(savedInstanceState);
 		setContentView(R.layout.activity_main);
 		
-		// LOAD RECIPES FROM FILE
-		InputStream inputStream = getResources().openRawResource(R.raw.master_recipe_data);
-		RecipeLoader loader = new RecipeLoader(inputStream, recipeDatabase);
-		loader.loadData();
-		
-		// LOAD FAVORITES
-		recipeDatabase.loadFavoriteRecipes();
-		
-		// LOAD SHOPPING LIST
-		recipeDatabase.loadShoppingListRecipes();
-		
-		gameData.validate();
+		// LOAD RECIPES, FAVORITES AND SHOPPING LIST IN THE BACKGROUND; screens using them wait on gameData.whenReady()
+		recipeDatabase.loadAsync();
 	}
 	
 	@Override
@@ -273,10 +262,16 @@ public class MainActivity extends BaseActivity {
 		buttonReset.setOnClickListener(new OnClickListener() {
 			@Override
 			public void onClick(View arg0) {
-				gameData.clearGameData();
-				
-				layoutMain.removeAllViews();
-				refreshLayout();
+				// resetting re-validates Recipe unlocks, wait for the RecipeDatabase
+				gameData.whenReady(new Runnable() {
+					@Override
+					public void run() {
+						gameData.clearGameData();
+						
+						layoutMain.removeAllViews();
+						refreshLayout();
+					}
+				});
 			}	
 		});
 		layoutMain.addView(buttonReset);
@@ -0,0 +1,930 @@
+package com.companyx.android.cookingxp;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Posting List
+ *
+ * Sorted list of recipeId's used by the search index in place of a Set of boxed Integers.
+ * While the index is built, recipeId's are appended to a growable int buffer; an out-of-order append only clears the sorted flag.
+ * Once loading finishes, freeze() sorts and deduplicates the buffer and compresses it, roaring-style, into chunks of 2^16 recipeId's:
+ * - dense chunks, holding at least DENSE_CARDINALITY recipeId's, are stored as bitmaps
+ * - all other recipeId's are stored in one stream of variable-byte encoded deltas
+ * Intersection, union and subtraction run on the compressed form, combining dense chunks word by word.
+ * When one list is much shorter, intersection gallops through the longer one using a skip table over the sparse stream, so its cost follows the shorter list.
+ * Appending to or removing from a frozen list decodes it back into the buffer until it is frozen again, except for removing a whole range of recipeId's, which re-encodes it in one pass.
+ *
+ * VARIABLE-BYTE ENCODING:
+ * each delta from the previous sparse recipeId is written 7 bits at a time, least significant first, the high bit set on all but the last byte
+ *
+ * SERIALIZED FORM (big-endian), the compressed form as is so that reading it back needs no re-encoding:
+ * int size, int sparseLength, sparseLength x byte
+ * int skipCount, skipCount x int skipValue, skipCount x int skipOffset
+ * int denseCount, denseCount x int denseKey, denseCount x CHUNK_WORDS x long bitmap word
+ *
+ * @author James Chin <jameslchin@gmail.com>
+ */
+final class PostingList {
+	// CONSTANTS
+	private static final int INITIAL_CAPACITY = 4; // most words are used by a handful of recipes
+	private static final int CHUNK_SHIFT = 16;
+	private static final int CHUNK_WORDS = (1 << CHUNK_SHIFT) / 64; // longs per dense chunk bitmap
+	static final int DENSE_CARDINALITY = 4096; // from here a bitmap is no larger than the deltas and faster to combine
+	private static final int SKIP_INTERVAL = 64; // sparse recipeId's per skip table entry
+	private static final int GALLOP_RATIO = 16; // size ratio from which intersection gallops instead of merging
+	private static final byte[] NO_BYTES = new byte[0];
+	private static final int[] NO_KEYS = new int[0];
+	private static final long[][] NO_BITMAPS = new long[0][];
+
+	/**
+	 * Orders PostingLists by ascending size, i.e. rarest word first.
+	 */
+	static final Comparator<PostingList> BY_SIZE = new Comparator<PostingList>() {
+		@Override
+		public int compare(PostingList a, PostingList b) {
+			int sizeA = a.size();
+			int sizeB = b.size();
+			return (sizeA < sizeB) ? -1 : ((sizeA == sizeB) ? 0 : 1);
+		}
+	};
+
+	// BUILD BUFFER, null while frozen
+	private int[] ids;
+	private boolean sorted = true; // false after an out-of-order append, until sorted again
+
+	// COMPRESSED FORM, valid while frozen
+	private byte[] sparse; // variable-byte deltas of the recipeId's outside dense chunks
+	private int[] denseKeys; // ascending chunk numbers of the dense chunks
+	private long[][] denseBitmaps; // bitmap of each dense chunk
+	private int[] skipValues; // every SKIP_INTERVAL-th sparse recipeId, null for short sparse streams
+	private int[] skipOffsets; // sparse stream offset following each recipeId of skipValues
+
+	private int size;
+
+	/**
+	 * Creates an empty list.
+	 */
+	PostingList() {
+		this(INITIAL_CAPACITY);
+	}
+
+	/**
+	 * Creates an empty list with room for the specified number of recipeId's.
+	 * @param capacity the initial capacity.
+	 */
+	PostingList(int capacity) {
+		ids = new int[capacity];
+	}
+
+	/**
+	 * Creates a frozen list from its compressed form.
+	 */
+	private PostingList(byte[] sparse, int[] skipValues, int[] skipOffsets, int[] denseKeys, long[][] denseBitmaps, int size) {
+		this.sparse = sparse;
+		this.skipValues = skipValues;
+		this.skipOffsets = skipOffsets;
+		this.denseKeys = denseKeys;
+		this.denseBitmaps = denseBitmaps;
+		this.size = size;
+	}
+
+	/**
+	 * Iterates the recipeId's of a frozen list in ascending order, merging the sparse stream with the dense chunks.
+	 */
+	private final class Cursor {
+		int value = -1; // current recipeId, -1 once exhausted
+
+		private int sparseOffset;
+		private int sparseIndex; // number of sparse recipeId's decoded, including sparseValue
+		private int sparseValue; // next sparse recipeId, -1 once exhausted
+		private int denseIndex;
+		private int wordIndex;
+		private long word; // bits of the current dense word not yet visited
+		private int denseValue; // next dense recipeId, -1 once exhausted
+
+		Cursor() {
+			nextSparse();
+			denseIndex = -1;
+			nextDenseChunk();
+			next();
+		}
+
+		/**
+		 * Moves to the next recipeId.
+		 * @return true if there is one, false once exhausted.
+		 */
+		boolean next() {
+			if (sparseValue < 0 && denseValue < 0) {
+				value = -1;
+				return false;
+			}
+
+			if (denseValue < 0 || (sparseValue >= 0 && sparseValue < denseValue)) {
+				value = sparseValue;
+				nextSparse();
+			} else {
+				value = denseValue;
+				nextDense();
+			}
+
+			return true;
+		}
+
+		/**
+		 * Moves to the first recipeId at or above the target, jumping through the skip table and straight to the target's dense chunk instead of visiting every recipeId.
+		 * @param target the recipeId to move to.
+		 * @return true if there is such a recipeId, false once exhausted.
+		 */
+		boolean advance(int target) {
+			if (value < 0)
+				return false;
+			if (value >= target)
+				return true;
+
+			// SPARSE, gallop to the last skip table entry at or below the target, then decode forward
+			if (sparseValue >= 0 && sparseValue < target) {
+				if (skipValues != null) {
+					int block = (sparseIndex - 1) / SKIP_INTERVAL;
+					int low = block;
+					int step = 1;
+					while (low + step < skipValues.length && skipValues[low + step] <= target) {
+						low += step;
+						step <<= 1;
+					}
+
+					int high = Math.min(low + step, skipValues.length);
+					while (high - low > 1) {
+						int mid = (low + high) >>> 1;
+						if (skipValues[mid] <= target)
+							low = mid;
+						else
+							high = mid;
+					}
+
+					if (low > block) {
+						sparseValue = skipValues[low];
+						sparseOffset = skipOffsets[low];
+						sparseIndex = low * SKIP_INTERVAL + 1;
+					}
+				}
+
+				while (sparseValue >= 0 && sparseValue < target)
+					nextSparse();
+			}
+
+			// DENSE, jump to the first chunk not below the target's chunk
+			if (denseValue >= 0 && denseValue < target) {
+				int key = target >>> CHUNK_SHIFT;
+				while (denseIndex < denseKeys.length && denseKeys[denseIndex] < key)
+					denseIndex++;
+
+				if (denseIndex == denseKeys.length)
+					denseValue = -1;
+				else {
+					boolean sameChunk = denseKeys[denseIndex] == key;
+					wordIndex = sameChunk ? (target >>> 6) & (CHUNK_WORDS - 1) : 0;
+					word = denseBitmaps[denseIndex][wordIndex] & (sameChunk ? -1L << target : -1L);
+					nextDense();
+				}
+			}
+
+			return next();
+		}
+
+		/**
+		 * Returns true if the current recipeId lies in a dense chunk; all recipeId's of that chunk are then in its bitmap.
+		 * @return true if the current recipeId is in a dense chunk, false otherwise.
+		 */
+		boolean inDense() {
+			return value >= 0 && denseIndex < denseKeys.length && denseKeys[denseIndex] == value >>> CHUNK_SHIFT;
+		}
+
+		/**
+		 * Returns the bitmap of the current dense chunk.
+		 * @return the bitmap, not to be modified.
+		 */
+		long[] bitmap() {
+			return denseBitmaps[denseIndex];
+		}
+
+		/**
+		 * Moves past the current dense chunk.
+		 */
+		void skipChunk() {
+			// sparse recipeId's never lie inside a dense chunk, so only the dense side moves
+			nextDenseChunk();
+			next();
+		}
+
+		private void nextSparse() {
+			if (sparseOffset >= sparse.length) {
+				sparseValue = -1;
+				return;
+			}
+
+			int delta = 0;
+			int shift = 0;
+			byte b;
+			do {
+				b = sparse[sparseOffset++];
+				delta |= (b & 0x7f) << shift;
+				shift += 7;
+			} while (b < 0);
+
+			sparseValue += delta;
+			sparseIndex++;
+		}
+
+		private void nextDense() {
+			while (word == 0) {
+				if (++wordIndex == CHUNK_WORDS) {
+					nextDenseChunk();
+					return;
+				}
+				word = denseBitmaps[denseIndex][wordIndex];
+			}
+
+			int bit = Long.numberOfTrailingZeros(word);
+			word &= word - 1;
+			denseValue = (denseKeys[denseIndex] << CHUNK_SHIFT) | (wordIndex << 6) | bit;
+		}
+
+		private void nextDenseChunk() {
+			if (++denseIndex >= denseKeys.length) {
+				denseValue = -1;
+				return;
+			}
+
+			wordIndex = 0;
+			word = denseBitmaps[denseIndex][0];
+			nextDense();
+		}
+	}
+
+	/**
+	 * Writes ascending recipeId's into the compressed form, deciding per chunk between a bitmap and the sparse stream.
+	 */
+	private static final class Encoder {
+		private byte[] sparse = new byte[16];
+		private int sparseLength;
+		private int lastSparse; // delta base of the sparse stream
+		private int sparseCount;
+		private int[] skipValues = new int[4];
+		private int[] skipOffsets = new int[4];
+		private int[] denseKeys = new int[2];
+		private long[][] denseBitmaps = new long[2][];
+		private int denseCount;
+		private int size;
+
+		// CURRENT CHUNK
+		private long[] chunk; // allocated on first use
+		private int chunkKey = -1;
+		private int chunkCount;
+		private int minWord = CHUNK_WORDS; // range of words touched in the current chunk
+		private int maxWord = -1;
+
+		/**
+		 * Adds a recipeId larger than all recipeId's added before.
+		 * @param recipeId the recipeId to add.
+		 */
+		void add(int recipeId) {
+			int key = recipeId >>> CHUNK_SHIFT;
+			if (key != chunkKey)
+				startChunk(key);
+
+			setBits((recipeId >>> 6) & (CHUNK_WORDS - 1), 1L << recipeId);
+		}
+
+		/**
+		 * Adds a recipeId larger than all recipeId's added before straight to the sparse stream.
+		 * Only for lists too short to hold a dense chunk.
+		 * @param recipeId the recipeId to add.
+		 */
+		void addSparse(int recipeId) {
+			writeSparse(recipeId);
+			size++;
+		}
+
+		/**
+		 * Adds the bits of a chunk bitmap at or above a recipeId; bits already added are ignored.
+		 * @param key the chunk number.
+		 * @param bitmap the chunk bitmap.
+		 * @param from the smallest recipeId to take from the bitmap, within the chunk.
+		 */
+		void addBits(int key, long[] bitmap, int from) {
+			if (key != chunkKey)
+				startChunk(key);
+
+			long mask = -1L << from;
+			for (int w = (from >>> 6) & (CHUNK_WORDS - 1); w < CHUNK_WORDS; w++, mask = -1L)
+				setBits(w, bitmap[w] & mask);
+		}
+
+		/**
+		 * Adds the intersection of two chunk bitmaps at or above a recipeId, all larger than the recipeId's of earlier chunks.
+		 * @param key the chunk number.
+		 * @param a the first chunk bitmap.
+		 * @param b the second chunk bitmap.
+		 * @param from the smallest recipeId to take from the bitmaps, within the chunk.
+		 */
+		void addCommonBits(int key, long[] a, long[] b, int from) {
+			if (key != chunkKey)
+				startChunk(key);
+
+			long mask = -1L << from;
+			for (int w = (from >>> 6) & (CHUNK_WORDS - 1); w < CHUNK_WORDS; w++, mask = -1L)
+				setBits(w, a[w] & b[w] & mask);
+		}
+
+		/**
+		 * Adds the bits of one chunk bitmap missing from another at or above a recipeId, all larger than the recipeId's of earlier chunks.
+		 * @param key the chunk number.
+		 * @param a the chunk bitmap to take bits from.
+		 * @param b the chunk bitmap of the bits to leave out.
+		 * @param from the smallest recipeId to take from the bitmaps, within the chunk.
+		 */
+		void addDifferentBits(int key, long[] a, long[] b, int from) {
+			if (key != chunkKey)
+				startChunk(key);
+
+			long mask = -1L << from;
+			for (int w = (from >>> 6) & (CHUNK_WORDS - 1); w < CHUNK_WORDS; w++, mask = -1L)
+				setBits(w, a[w] & ~b[w] & mask);
+		}
+
+		/**
+		 * Finishes the compressed form.
+		 * @return the frozen PostingList.
+		 */
+		PostingList finish() {
+			flushChunk();
+
+			byte[] sparseBytes = (sparseLength == 0) ? NO_BYTES : copy(sparse, sparseLength);
+
+			// a single block is decoded faster than it is skipped
+			int skipCount = (sparseCount + SKIP_INTERVAL - 1) / SKIP_INTERVAL;
+			int[] skipValuesResult = (skipCount > 1) ? copy(skipValues, skipCount) : null;
+			int[] skipOffsetsResult = (skipCount > 1) ? copy(skipOffsets, skipCount) : null;
+
+			if (denseCount == 0)
+				return new PostingList(sparseBytes, skipValuesResult, skipOffsetsResult, NO_KEYS, NO_BITMAPS, size);
+
+			return new PostingList(sparseBytes, skipValuesResult, skipOffsetsResult, copy(denseKeys, denseCount), copy(denseBitmaps, denseCount), size);
+		}
+
+		/**
+		 * Helper function which sets bits of a word of the current chunk, counting only bits not set before.
+		 * @param w the word index.
+		 * @param bits the bits to set.
+		 */
+		private void setBits(int w, long bits) {
+			long added = bits & ~chunk[w];
+			if (added == 0)
+				return;
+
+			chunk[w] |= added;
+			chunkCount += Long.bitCount(added);
+			minWord = Math.min(minWord, w);
+			maxWord = Math.max(maxWord, w);
+		}
+
+		private void startChunk(int key) {
+			flushChunk();
+			chunkKey = key;
+
+			if (chunk == null)
+				chunk = new long[CHUNK_WORDS];
+		}
+
+		/**
+		 * Helper function which stores the current chunk as a bitmap if it is dense, or appends it to the sparse stream otherwise.
+		 */
+		private void flushChunk() {
+			if (chunkCount == 0)
+				return;
+
+			size += chunkCount;
+
+			if (chunkCount >= DENSE_CARDINALITY) {
+				if (denseCount == denseKeys.length) {
+					denseKeys = copy(denseKeys, denseCount * 2);
+					denseBitmaps = copy(denseBitmaps, denseCount * 2);
+				}
+				denseKeys[denseCount] = chunkKey;
+				denseBitmaps[denseCount] = chunk.clone();
+				denseCount++;
+			} else {
+				for (int w = minWord; w <= maxWord; w++) {
+					for (long bits = chunk[w]; bits != 0; bits &= bits - 1)
+						writeSparse((chunkKey << CHUNK_SHIFT) | (w << 6) | Long.numberOfTrailingZeros(bits));
+				}
+			}
+
+			Arrays.fill(chunk, minWord, maxWord + 1, 0L);
+			chunkCount = 0;
+			minWord = CHUNK_WORDS;
+			maxWord = -1;
+		}
+
+		private void writeSparse(int recipeId) {
+			if (sparseLength + 5 > sparse.length)
+				sparse = copy(sparse, sparse.length * 2 + 5);
+
+			sparseLength = writeDelta(sparse, sparseLength, recipeId - lastSparse);
+			lastSparse = recipeId;
+
+			// SKIP TABLE, the first recipeId of every block
+			if (sparseCount % SKIP_INTERVAL == 0) {
+				int block = sparseCount / SKIP_INTERVAL;
+				if (block == skipValues.length) {
+					skipValues = copy(skipValues, block * 2);
+					skipOffsets = copy(skipOffsets, block * 2);
+				}
+				skipValues[block] = recipeId;
+				skipOffsets[block] = sparseLength;
+			}
+			sparseCount++;
+		}
+	}
+
+	/**
+	 * Appends a recipeId. Appending the last recipeId again has no effect, so a recipe using a word twice is only listed once.
+	 * @param recipeId the recipeId to append.
+	 */
+	void add(int recipeId) {
+		thaw();
+
+		if (size > 0) {
+			int last = ids[size - 1];
+			if (recipeId == last)
+				return;
+			if (recipeId < last)
+				sorted = false;
+		}
+
+		if (size == ids.length)
+			ids = copy(ids, size + (size >> 1) + 1);
+
+		ids[size++] = recipeId;
+	}
+
+	/**
+	 * Sorts the list, removes duplicates and compresses it.
+	 */
+	void freeze() {
+		if (ids == null)
+			return;
+
+		sort();
+
+		Encoder encoder = new Encoder();
+		if (size < DENSE_CARDINALITY) {
+			// no chunk can be dense, write the sparse stream directly
+			for (int i = 0; i < size; i++)
+				encoder.addSparse(ids[i]);
+		} else {
+			for (int i = 0; i < size; i++)
+				encoder.add(ids[i]);
+		}
+
+		PostingList frozen = encoder.finish();
+		sparse = frozen.sparse;
+		skipValues = frozen.skipValues;
+		skipOffsets = frozen.skipOffsets;
+		denseKeys = frozen.denseKeys;
+		denseBitmaps = frozen.denseBitmaps;
+		ids = null;
+	}
+
+	/**
+	 * Returns a new frozen list of the recipeId's contained in both lists.
+	 * @param other the list to intersect with.
+	 * @return the intersection.
+	 */
+	PostingList intersect(PostingList other) {
+		freeze();
+		other.freeze();
+
+		Encoder encoder = new Encoder();
+
+		// very different sizes, gallop through the longer list from one recipeId of the shorter list to the next
+		PostingList shorter = (size <= other.size) ? this : other;
+		PostingList longer = (shorter == this) ? other : this;
+		if ((long) shorter.size * GALLOP_RATIO < longer.size) {
+			Cursor s = shorter.new Cursor();
+			Cursor l = longer.new Cursor();
+
+			while (s.value >= 0 && l.advance(s.value)) {
+				if (l.value == s.value) {
+					encoder.add(s.value);
+					s.next();
+				} else
+					s.advance(l.value);
+			}
+
+			return encoder.finish();
+		}
+
+		Cursor a = new Cursor();
+		Cursor b = other.new Cursor();
+
+		while (a.value >= 0 && b.value >= 0) {
+			// both in the same dense chunk, nothing below the larger value can still match
+			if (a.inDense() && b.inDense() && a.value >>> CHUNK_SHIFT == b.value >>> CHUNK_SHIFT) {
+				encoder.addCommonBits(a.value >>> CHUNK_SHIFT, a.bitmap(), b.bitmap(), Math.max(a.value, b.value));
+				a.skipChunk();
+				b.skipChunk();
+			} else if (a.value < b.value)
+				a.next();
+			else if (a.value > b.value)
+				b.next();
+			else {
+				encoder.add(a.value);
+				a.next();
+				b.next();
+			}
+		}
+
+		return encoder.finish();
+	}
+
+	/**
+	 * Returns true if the list holds no recipeId's.
+	 * @return true if the list is empty, false otherwise.
+	 */
+	boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Reads a frozen list in the serialized form written by write(), without decoding or re-encoding it.
+	 * @param buffer the serialized list, positioned at its size; left positioned after the list.
+	 * @return the frozen PostingList.
+	 */
+	static PostingList read(ByteBuffer buffer) {
+		int size = buffer.getInt();
+
+		byte[] sparse = new byte[buffer.getInt()];
+		buffer.get(sparse);
+
+		int skipCount = buffer.getInt();
+		int[] skipValues = null;
+		int[] skipOffsets = null;
+		if (skipCount > 0) {
+			skipValues = new int[skipCount];
+			skipOffsets = new int[skipCount];
+			IntBuffer ints = buffer.asIntBuffer();
+			ints.get(skipValues);
+			ints.get(skipOffsets);
+			buffer.position(buffer.position() + skipCount * 8);
+		}
+
+		int denseCount = buffer.getInt();
+		if (denseCount == 0)
+			return new PostingList((sparse.length == 0) ? NO_BYTES : sparse, skipValues, skipOffsets, NO_KEYS, NO_BITMAPS, size);
+
+		int[] denseKeys = new int[denseCount];
+		buffer.asIntBuffer().get(denseKeys);
+		buffer.position(buffer.position() + denseCount * 4);
+
+		long[][] denseBitmaps = new long[denseCount][CHUNK_WORDS];
+		LongBuffer longs = buffer.asLongBuffer();
+		for (long[] bitmap : denseBitmaps)
+			longs.get(bitmap);
+		buffer.position(buffer.position() + denseCount * CHUNK_WORDS * 8);
+
+		return new PostingList(sparse, skipValues, skipOffsets, denseKeys, denseBitmaps, size);
+	}
+
+	/**
+	 * Removes a recipeId.
+	 * @param recipeId the recipeId to remove.
+	 * @return true if the recipeId was listed, false otherwise.
+	 */
+	boolean remove(int recipeId) {
+		thaw();
+		sort();
+
+		int low = 0;
+		int high = size - 1;
+		int index = -1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			if (ids[mid] < recipeId)
+				low = mid + 1;
+			else if (ids[mid] > recipeId)
+				high = mid - 1;
+			else {
+				index = mid;
+				break;
+			}
+		}
+		if (index < 0)
+			return false;
+
+		System.arraycopy(ids, index + 1, ids, index, size - index - 1);
+		size--;
+
+		return true;
+	}
+
+	/**
+	 * Removes all recipeId's of a range, such as the recipeId's owned by one pack.
+	 * A frozen list stays frozen: it is re-encoded in one pass that copies the dense chunks outside the range whole and jumps over the range through the skip table, instead of being decoded to remove one recipeId at a time.
+	 * @param first the smallest recipeId to remove.
+	 * @param last the largest recipeId to remove.
+	 * @return true if any recipeId of the range was listed, false otherwise.
+	 */
+	boolean removeRange(int first, int last) {
+		if (ids != null) {
+			sort();
+
+			int from = 0;
+			int high = size;
+			while (from < high) {
+				int mid = (from + high) >>> 1;
+				if (ids[mid] < first)
+					from = mid + 1;
+				else
+					high = mid;
+			}
+
+			int to = from;
+			while (to < size && ids[to] <= last)
+				to++;
+			if (to == from)
+				return false;
+
+			System.arraycopy(ids, to, ids, from, size - to);
+			size -= to - from;
+
+			return true;
+		}
+
+		Cursor cursor = new Cursor();
+		if (!cursor.advance(first) || cursor.value > last)
+			return false;
+
+		Encoder encoder = new Encoder();
+		cursor = new Cursor();
+
+		// BELOW THE RANGE, dense chunks wholly below it are copied as bitmaps
+		while (cursor.value >= 0 && cursor.value < first) {
+			if (cursor.inDense() && cursor.value >>> CHUNK_SHIFT < first >>> CHUNK_SHIFT) {
+				encoder.addBits(cursor.value >>> CHUNK_SHIFT, cursor.bitmap(), cursor.value);
+				cursor.skipChunk();
+			} else {
+				encoder.add(cursor.value);
+				cursor.next();
+			}
+		}
+
+		// ABOVE THE RANGE, nothing follows a range ending at Integer.MAX_VALUE
+		if (last < Integer.MAX_VALUE && cursor.advance(last + 1)) {
+			while (cursor.value >= 0) {
+				if (cursor.inDense()) {
+					encoder.addBits(cursor.value >>> CHUNK_SHIFT, cursor.bitmap(), cursor.value);
+					cursor.skipChunk();
+				} else {
+					encoder.add(cursor.value);
+					cursor.next();
+				}
+			}
+		}
+
+		PostingList frozen = encoder.finish();
+		sparse = frozen.sparse;
+		skipValues = frozen.skipValues;
+		skipOffsets = frozen.skipOffsets;
+		denseKeys = frozen.denseKeys;
+		denseBitmaps = frozen.denseBitmaps;
+		size = frozen.size;
+
+		return true;
+	}
+
+	/**
+	 * Returns the number of recipeId's.
+	 * @return the number of distinct recipeId's.
+	 */
+	int size() {
+		sort();
+
+		return size;
+	}
+
+	/**
+	 * Returns a new frozen list of the recipeId's contained in this list but not in the other.
+	 * The other list is galloped through from one recipeId of this list to the next, so subtracting a long list from a short one costs about the length of the short one.
+	 * @param other the list of recipeId's to leave out.
+	 * @return the difference.
+	 */
+	PostingList subtract(PostingList other) {
+		freeze();
+		other.freeze();
+
+		Encoder encoder = new Encoder();
+		Cursor a = new Cursor();
+		Cursor b = other.new Cursor();
+
+		while (a.value >= 0) {
+			b.advance(a.value);
+
+			// both in the same dense chunk, everything below the current value has been added
+			if (a.inDense() && b.inDense() && a.value >>> CHUNK_SHIFT == b.value >>> CHUNK_SHIFT) {
+				encoder.addDifferentBits(a.value >>> CHUNK_SHIFT, a.bitmap(), b.bitmap(), a.value);
+				a.skipChunk();
+			} else {
+				if (b.value != a.value)
+					encoder.add(a.value);
+				a.next();
+			}
+		}
+
+		return encoder.finish();
+	}
+
+	/**
+	 * Returns the recipeId's in ascending order.
+	 * @return a new array of the recipeId's.
+	 */
+	int[] toArray() {
+		if (ids != null) {
+			sort();
+			return copy(ids, size);
+		}
+
+		int[] result = new int[size];
+		int i = 0;
+		for (Cursor cursor = new Cursor(); cursor.value >= 0; cursor.next())
+			result[i++] = cursor.value;
+
+		return result;
+	}
+
+	/**
+	 * Returns a new frozen list of the recipeId's contained in either list.
+	 * @param other the list to unite with.
+	 * @return the union.
+	 */
+	PostingList union(PostingList other) {
+		freeze();
+		other.freeze();
+
+		Encoder encoder = new Encoder();
+		Cursor a = new Cursor();
+		Cursor b = other.new Cursor();
+
+		while (a.value >= 0 || b.value >= 0) {
+			// both in the same dense chunk, everything below the smaller value has been added
+			if (a.inDense() && b.inDense() && a.value >>> CHUNK_SHIFT == b.value >>> CHUNK_SHIFT) {
+				int key = a.value >>> CHUNK_SHIFT;
+				int from = Math.min(a.value, b.value);
+				encoder.addBits(key, a.bitmap(), from);
+				encoder.addBits(key, b.bitmap(), from);
+				a.skipChunk();
+				b.skipChunk();
+			} else if (b.value < 0 || (a.value >= 0 && a.value < b.value)) {
+				encoder.add(a.value);
+				a.next();
+			} else if (a.value < 0 || b.value < a.value) {
+				encoder.add(b.value);
+				b.next();
+			} else {
+				encoder.add(a.value);
+				a.next();
+				b.next();
+			}
+		}
+
+		return encoder.finish();
+	}
+
+	/**
+	 * Writes the list in its serialized form, freezing it first.
+	 * @param out the output.
+	 * @throws IOException if the output cannot be written.
+	 */
+	void write(DataOutputStream out) throws IOException {
+		freeze();
+
+		out.writeInt(size);
+
+		out.writeInt(sparse.length);
+		out.write(sparse);
+
+		int skipCount = (skipValues == null) ? 0 : skipValues.length;
+		out.writeInt(skipCount);
+		for (int i = 0; i < skipCount; i++)
+			out.writeInt(skipValues[i]);
+		for (int i = 0; i < skipCount; i++)
+			out.writeInt(skipOffsets[i]);
+
+		out.writeInt(denseKeys.length);
+		for (int key : denseKeys)
+			out.writeInt(key);
+		for (long[] bitmap : denseBitmaps) {
+			for (long word : bitmap)
+				out.writeLong(word);
+		}
+	}
+
+	/**
+	 * Helper function which copies the start of an array into a new array of the specified length, padded with zeros.
+	 * Arrays.copyOf() needs API 9.
+	 * @param array the array to copy.
+	 * @param length the length of the new array.
+	 * @return the new array.
+	 */
+	private static byte[] copy(byte[] array, int length) {
+		byte[] result = new byte[length];
+		System.arraycopy(array, 0, result, 0, Math.min(array.length, length));
+
+		return result;
+	}
+
+	/**
+	 * Helper function which copies the start of an array into a new array of the specified length, padded with zeros.
+	 * @param array the array to copy.
+	 * @param length the length of the new array.
+	 * @return the new array.
+	 */
+	private static int[] copy(int[] array, int length) {
+		int[] result = new int[length];
+		System.arraycopy(array, 0, result, 0, Math.min(array.length, length));
+
+		return result;
+	}
+
+	/**
+	 * Helper function which copies the start of an array into a new array of the specified length, padded with nulls.
+	 * @param array the array to copy.
+	 * @param length the length of the new array.
+	 * @return the new array.
+	 */
+	private static long[][] copy(long[][] array, int length) {
+		long[][] result = new long[length][];
+		System.arraycopy(array, 0, result, 0, Math.min(array.length, length));
+
+		return result;
+	}
+
+	/**
+	 * Helper function which sorts the buffer after out-of-order appends and removes duplicates.
+	 */
+	private void sort() {
+		if (sorted || ids == null)
+			return;
+
+		Arrays.sort(ids, 0, size);
+
+		int unique = 0;
+		for (int i = 0; i < size; i++) {
+			if (unique == 0 || ids[i] != ids[unique - 1])
+				ids[unique++] = ids[i];
+		}
+
+		size = unique;
+		sorted = true;
+	}
+
+	/**
+	 * Helper function which writes one variable-byte encoded delta.
+	 * @param out the destination, with room for 5 more bytes.
+	 * @param offset the offset to write at.
+	 * @param delta the non-negative delta to write.
+	 * @return the offset after the written bytes.
+	 */
+	private static int writeDelta(byte[] out, int offset, int delta) {
+		while ((delta & ~0x7f) != 0) {
+			out[offset++] = (byte) ((delta & 0x7f) | 0x80);
+			delta >>>= 7;
+		}
+		out[offset++] = (byte) delta;
+
+		return offset;
+	}
+
+	/**
+	 * Helper function which decodes a frozen list back into the build buffer.
+	 */
+	private void thaw() {
+		if (ids != null)
+			return;
+
+		int[] decoded = toArray();
+		ids = copy(decoded, Math.max(INITIAL_CAPACITY, size + (size >> 1)));
+		sorted = true;
+		sparse = null;
+		skipValues = null;
+		skipOffsets = null;
+		denseKeys = null;
+		denseBitmaps = null;
+	}
+}
@@ -256,7 +256,7 @@ public class RecipeActivity extends BaseActivity {
 		
 		// INGREDIENTS
 		addHeader(getString(R.string.recipe_header_ingredients), layoutBody, this, scalingFactor);
-		for (RecipeIngredient ri : recipe.ingredients) {
+		for (RecipeIngredient ri : recipe.getIngredients()) {
 			String s = ri.amount + " " + ri.measurement + " " + ri.ingredientName;
 			
 			// ingredient notes
@@ -269,8 +269,9 @@ public class RecipeActivity extends BaseActivity {
 		
 		// DIRECTIONS
 		addHeader(getString(R.string.recipe_header_directions), layoutBody, this, scalingFactor);
-		if (recipe.directions != null) {
-			for (RecipeDirection rd : recipe.directions)
+		List<RecipeDirection> directions = recipe.getDirections();
+		if (directions != null) {
+			for (RecipeDirection rd : directions)
 				addTextLine(rd.direction, layoutBody, this, scalingFactor);
 		}
 		
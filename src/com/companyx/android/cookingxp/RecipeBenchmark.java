@@ -0,0 +1,240 @@
+package com.companyx.android.cookingxp;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import com.companyx.android.cookingxp.RecipeDatabase.Recipe;
+
+/**
+ * Recipe Benchmark
+ *
+ * Measures how loading scales with the size of the recipe data, for capacity planning before shipping larger packs.
+ * For each scale a synthetic corpus is written by RecipeGenerator, then parsed by RecipeLoader and indexed into a RecipeDatabase:
+ * java -Xmx4g com.companyx.android.cookingxp.RecipeBenchmark [recipeCount...] (defaults to 1000 100000 1000000)
+ *
+ * REPORTED PER SCALE:
+ * parse time: reading the file into memory and parsing it into Recipes, as the app does when the pack is missing
+ * index time: adding every Recipe to the database, then finishing the load as the app does: compressing the index, ranking names, categorizing and building the term dictionary
+ * peak heap: highest heap in use while parsing and indexing, above the baseline before parsing, sampled every millisecond
+ * retained heap: heap still in use by the finished database after garbage collection, above the same baseline
+ * terms, postings: distinct search index terms and their total postings, and in parentheses the same counts had words only been split on spaces and lowercased, the indexing before TextAnalyzer
+ *
+ * Heap figures come from Runtime, so they are approximate and include garbage not yet collected; run with a fixed -Xms equal to -Xmx for steadier numbers.
+ * A scale that runs out of memory is reported as such and ends the run, since larger scales would fail too.
+ *
+ * @author James Chin <jameslchin@gmail.com>
+ */
+final class RecipeBenchmark {
+	// CONSTANTS
+	static final int[] DEFAULT_SCALES = {1000, 100000, 1000000};
+	private static final int WARM_UP_RECIPES = 1000; // run once before measuring so the parser and indexer are compiled
+	private static final long SAMPLE_INTERVAL_MS = 1;
+	private static final int GC_ROUNDS = 3;
+	private static final double MB = 1024 * 1024;
+
+	/**
+	 * Measurements of one scale.
+	 */
+	static final class Result {
+		int recipeCount;
+		long fileBytes;
+		long parseNanos;
+		long indexNanos;
+		long peakHeapBytes;
+		long retainedHeapBytes;
+		int termCount;
+		long postingCount;
+		int rawTermCount;
+		long rawPostingCount;
+	}
+
+	/**
+	 * Samples the heap in use on a background thread and keeps the highest value seen.
+	 */
+	private static final class HeapSampler implements Runnable {
+		private final Thread thread = new Thread(this, "RecipeBenchmarkHeapSampler");
+		private volatile boolean running = true;
+		private volatile long peak;
+
+		HeapSampler() {
+			thread.setDaemon(true);
+			thread.start();
+		}
+
+		@Override
+		public void run() {
+			while (running) {
+				peak = Math.max(peak, usedHeap());
+
+				try {
+					Thread.sleep(SAMPLE_INTERVAL_MS);
+				} catch (InterruptedException e) {
+					return;
+				}
+			}
+		}
+
+		/**
+		 * Stops sampling.
+		 * @return the highest heap in use seen, in bytes.
+		 * @throws InterruptedException if interrupted while waiting for the sampler thread.
+		 */
+		long stop() throws InterruptedException {
+			running = false;
+			thread.join();
+
+			return Math.max(peak, usedHeap());
+		}
+	}
+
+	/**
+	 * Private constructor, static utility class.
+	 */
+	private RecipeBenchmark() {
+	}
+
+	/**
+	 * Command line entry point, runs the benchmark at each scale and prints one row per scale.
+	 * @param args the numbers of Recipes to benchmark, defaults to DEFAULT_SCALES.
+	 * @throws IOException if the corpus cannot be written or read.
+	 * @throws InterruptedException if interrupted while sampling the heap.
+	 */
+	public static void main(String[] args) throws IOException, InterruptedException {
+		int[] scales = DEFAULT_SCALES;
+		if (args.length > 0) {
+			scales = new int[args.length];
+			for (int i = 0; i < args.length; i++)
+				scales[i] = Integer.parseInt(args[i]);
+		}
+
+		run(WARM_UP_RECIPES);
+
+		System.out.println(String.format(Locale.US, "%10s %10s %10s %10s %12s %14s %21s %25s", "recipes", "file MB", "parse ms", "index ms", "peak heap MB", "retained MB", "terms (raw)", "postings (raw)"));
+
+		for (int recipeCount : scales) {
+			Result result;
+			try {
+				result = run(recipeCount);
+			} catch (OutOfMemoryError e) {
+				System.out.println(String.format(Locale.US, "%10d out of memory, max heap %.1f MB", recipeCount, Runtime.getRuntime().maxMemory() / MB));
+				break;
+			}
+
+			System.out.println(String.format(Locale.US, "%10d %10.1f %10d %10d %12.1f %14.1f %10d (%8d) %12d (%10d)", result.recipeCount, result.fileBytes / MB,
+					result.parseNanos / 1000000, result.indexNanos / 1000000, result.peakHeapBytes / MB, result.retainedHeapBytes / MB,
+					result.termCount, result.rawTermCount, result.postingCount, result.rawPostingCount));
+		}
+	}
+
+	/**
+	 * Generates a corpus of the specified size and measures parsing and indexing it.
+	 * @param recipeCount the number of Recipes to generate.
+	 * @return the measurements.
+	 * @throws IOException if the corpus cannot be written or read.
+	 * @throws InterruptedException if interrupted while sampling the heap.
+	 */
+	static Result run(int recipeCount) throws IOException, InterruptedException {
+		Result result = new Result();
+		result.recipeCount = recipeCount;
+
+		// GENERATE
+		File file = File.createTempFile("recipes_" + recipeCount + "_", ".txt");
+		try {
+			OutputStream out = new FileOutputStream(file);
+			try {
+				RecipeGenerator.write(recipeCount, RecipeGenerator.DEFAULT_SEED, out);
+			} finally {
+				out.close();
+			}
+			result.fileBytes = file.length();
+
+			gc();
+			long baseline = usedHeap();
+			HeapSampler sampler = new HeapSampler();
+
+			// PARSE, the loader closes the stream
+			long start = System.nanoTime();
+			List<Recipe> recipes = new RecipeLoader(new FileInputStream(file), null).parseRecipes();
+			long parsed = System.nanoTime();
+
+			// INDEX
+			RecipeDatabase recipeDatabase = new RecipeDatabase(new HashSet<String>(Arrays.asList(RecipeGenerator.MEATS)));
+			for (Recipe recipe : recipes)
+				recipeDatabase.addRecipe(recipe);
+			recipeDatabase.finishLoading();
+			long indexed = System.nanoTime();
+
+			result.parseNanos = parsed - start;
+			result.indexNanos = indexed - parsed;
+			result.peakHeapBytes = sampler.stop() - baseline;
+
+			// TERMS, with and without text analysis
+			result.termCount = recipeDatabase.getIndexTermCount();
+			result.postingCount = recipeDatabase.getIndexPostingCount();
+			countRawTerms(recipes, result);
+
+			// RETAINED, only the database holds the Recipes now
+			recipes = null;
+			gc();
+			result.retainedHeapBytes = usedHeap() - baseline;
+
+			if (recipeDatabase.findRecipeById(recipeCount - 1) == null)
+				throw new IllegalStateException("expected " + recipeCount + " recipes");
+		} finally {
+			file.delete();
+		}
+
+		return result;
+	}
+
+	/**
+	 * Helper function which counts the distinct terms and postings of an index splitting words on spaces and lowercasing them only, as a baseline for the text analysis.
+	 * @param recipes the indexed Recipes.
+	 * @param result the measurements to store the counts in.
+	 */
+	private static void countRawTerms(List<Recipe> recipes, Result result) {
+		Set<String> terms = new HashSet<String>();
+		Set<String> recipeTerms = new HashSet<String>();
+
+		for (Recipe recipe : recipes) {
+			recipeTerms.clear();
+			recipeTerms.addAll(Arrays.asList(recipe.name.toLowerCase(Locale.US).split(" ")));
+			for (String ingredientName : recipe.getIngredientNames())
+				recipeTerms.addAll(Arrays.asList(ingredientName.toLowerCase(Locale.US).split(" ")));
+
+			terms.addAll(recipeTerms);
+			result.rawPostingCount += recipeTerms.size();
+		}
+
+		result.rawTermCount = terms.size();
+	}
+
+	/**
+	 * Helper function which asks for several rounds of garbage collection, so heap figures exclude collectable objects.
+	 * @throws InterruptedException if interrupted while waiting for the collector.
+	 */
+	private static void gc() throws InterruptedException {
+		for (int i = 0; i < GC_ROUNDS; i++) {
+			System.gc();
+			Thread.sleep(50);
+		}
+	}
+
+	/**
+	 * Returns the heap currently in use.
+	 * @return the heap in use, in bytes.
+	 */
+	private static long usedHeap() {
+		Runtime runtime = Runtime.getRuntime();
+
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+}
@@ -0,0 +1,199 @@
+package com.companyx.android.cookingxp;
+
+/**
+ * Recipe Bit Set
+ *
+ * Set of recipeId's holding one bit per recipeId, for flags such as unlocked, vegetarian, favorite or on the shopping list.
+ * Sets are combined word by word and counted with a population count, so filtering one flag by another never visits the Recipes themselves.
+ * As in RecipeStore, the bits are paged by recipe pack: each pack's range has its own word array, grown as higher recipeId's are set, so the distant ranges of different packs cost nothing in between.
+ *
+ * @author James Chin <jameslchin@gmail.com>
+ */
+final class RecipeBitSet {
+	// CONSTANTS
+	private static final int PAGE_SHIFT = RecipeDatabase.PACK_ID_SHIFT;
+	private static final int PAGE_MASK = (1 << PAGE_SHIFT) - 1;
+	private static final int PAGE_WORDS = (1 << PAGE_SHIFT) / 64; // longs per full page
+	private static final int INITIAL_WORDS = 4;
+
+	// STATE VARIABLES
+	private long[][] pages = new long[1][]; // indexed by packId, null for packs without bits
+
+	/**
+	 * Returns true if the recipeId is in the set.
+	 * @param recipeId the unique identifier of the Recipe.
+	 * @return true if the recipeId is in the set, false otherwise or if the recipeId is invalid.
+	 */
+	boolean get(int recipeId) {
+		if (recipeId < 0)
+			return false;
+
+		int packId = recipeId >> PAGE_SHIFT;
+		if (packId >= pages.length)
+			return false;
+
+		long[] page = pages[packId];
+		int wordIndex = (recipeId & PAGE_MASK) >>> 6;
+
+		return page != null && wordIndex < page.length && (page[wordIndex] & (1L << recipeId)) != 0;
+	}
+
+	/**
+	 * Adds a recipeId to the set.
+	 * @param recipeId the unique identifier of the Recipe, non-negative.
+	 * @return true if the recipeId was added, false if it was already in the set.
+	 */
+	boolean set(int recipeId) {
+		if (recipeId < 0)
+			throw new IllegalArgumentException("negative recipeId: " + recipeId);
+
+		int packId = recipeId >> PAGE_SHIFT;
+		int wordIndex = (recipeId & PAGE_MASK) >>> 6;
+
+		// grow the page table to the packId, then the page to the word
+		if (packId >= pages.length) {
+			long[][] newPages = new long[packId + 1][];
+			System.arraycopy(pages, 0, newPages, 0, pages.length);
+			pages = newPages;
+		}
+
+		long[] page = pages[packId];
+		if (page == null || wordIndex >= page.length) {
+			int capacity = (page == null) ? INITIAL_WORDS : page.length * 2;
+			capacity = Math.min(Math.max(capacity, wordIndex + 1), PAGE_WORDS);
+			long[] newPage = new long[capacity];
+			if (page != null)
+				System.arraycopy(page, 0, newPage, 0, page.length);
+			page = newPage;
+			pages[packId] = page;
+		}
+
+		long bit = 1L << recipeId;
+		if ((page[wordIndex] & bit) != 0)
+			return false;
+
+		page[wordIndex] |= bit;
+		return true;
+	}
+
+	/**
+	 * Removes a recipeId from the set.
+	 * @param recipeId the unique identifier of the Recipe.
+	 * @return true if the recipeId was removed, false if it was not in the set.
+	 */
+	boolean clear(int recipeId) {
+		if (!get(recipeId))
+			return false;
+
+		pages[recipeId >> PAGE_SHIFT][(recipeId & PAGE_MASK) >>> 6] &= ~(1L << recipeId);
+		return true;
+	}
+
+	/**
+	 * Removes all recipeId's of a pack from the set.
+	 * @param packId the unique identifier of the pack.
+	 */
+	void clearPack(int packId) {
+		if (packId >= 0 && packId < pages.length)
+			pages[packId] = null;
+	}
+
+	/**
+	 * Returns the recipeId's of a pack, such as the unlock progress of a pack about to be replaced.
+	 * @param packId the unique identifier of the pack.
+	 * @return a new set holding the recipeId's of the pack only.
+	 */
+	RecipeBitSet copyPack(int packId) {
+		RecipeBitSet result = new RecipeBitSet();
+		if (packId < 0 || packId >= pages.length || pages[packId] == null)
+			return result;
+
+		result.pages = new long[packId + 1][];
+		result.pages[packId] = pages[packId].clone();
+
+		return result;
+	}
+
+	/**
+	 * Returns the number of recipeId's in the set, by population count.
+	 * @return the number of recipeId's.
+	 */
+	int cardinality() {
+		int result = 0;
+
+		for (long[] page : pages) {
+			if (page == null)
+				continue;
+
+			for (long word : page)
+				result += Long.bitCount(word);
+		}
+
+		return result;
+	}
+
+	/**
+	 * Returns the recipeId's in both this set and another, combining the sets word by word.
+	 * @param other the other set.
+	 * @return a new set holding the intersection.
+	 */
+	RecipeBitSet and(RecipeBitSet other) {
+		RecipeBitSet result = new RecipeBitSet();
+		result.pages = new long[Math.min(pages.length, other.pages.length)][];
+
+		for (int packId = 0; packId < result.pages.length; packId++) {
+			long[] a = pages[packId];
+			long[] b = other.pages[packId];
+			if (a == null || b == null)
+				continue;
+
+			long[] page = new long[Math.min(a.length, b.length)];
+			for (int i = 0; i < page.length; i++)
+				page[i] = a[i] & b[i];
+			result.pages[packId] = page;
+		}
+
+		return result;
+	}
+
+	/**
+	 * Returns true if the set holds no recipeId's.
+	 * @return true if the set is empty, false otherwise.
+	 */
+	boolean isEmpty() {
+		for (long[] page : pages) {
+			if (page == null)
+				continue;
+
+			for (long word : page) {
+				if (word != 0)
+					return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Returns the recipeId's of the set.
+	 * @return a new array of the recipeId's, in ascending order.
+	 */
+	int[] toArray() {
+		int[] result = new int[cardinality()];
+		int count = 0;
+
+		for (int packId = 0; packId < pages.length; packId++) {
+			long[] page = pages[packId];
+			if (page == null)
+				continue;
+
+			int firstRecipeId = packId << PAGE_SHIFT;
+			for (int i = 0; i < page.length; i++) {
+				for (long word = page[i]; word != 0; word &= word - 1)
+					result[count++] = firstRecipeId + (i << 6) + Long.numberOfTrailingZeros(word);
+			}
+		}
+
+		return result;
+	}
+}
@@ -0,0 +1,238 @@
+package com.companyx.android.cookingxp;
+
+import com.companyx.android.cookingxp.RecipeDatabase.Recipe;
+
+/**
+ * Recipe Columns
+ *
+ * Scalar attributes of all Recipes in parallel primitive arrays indexed by recipeId, so filters and sorts over the whole corpus scan contiguous memory instead of following a pointer per Recipe and field.
+ * As in RecipeStore, each recipe pack has its own page of arrays, indexed by the recipeId within the pack's range.
+ * Slots without a Recipe hold zeros; callers combine scan results with a set of loaded Recipes, such as the unlocked Recipes.
+ *
+ * COLUMNS:
+ * prep, inactive prep and cook time in minutes, number of servings, and the rank of the Recipe name in the name order of all loaded Recipes.
+ * The number of index terms in the name and in the ingredient names, the field lengths for ranking search results, with their totals over all loaded Recipes.
+ *
+ * @author James Chin <jameslchin@gmail.com>
+ */
+final class RecipeColumns {
+	// CONSTANTS
+	private static final int PAGE_MASK = (1 << RecipeDatabase.PACK_ID_SHIFT) - 1;
+	private static final int INITIAL_CAPACITY = 16;
+
+	/**
+	 * Columns of the Recipes of one pack.
+	 */
+	private static final class Page {
+		short[] prepTimes;
+		short[] inactivePrepTimes;
+		short[] cookTimes;
+		byte[] servings;
+		int[] nameRanks;
+		byte[] nameTermCounts;
+		short[] ingredientTermCounts;
+
+		Page(int capacity) {
+			prepTimes = new short[capacity];
+			inactivePrepTimes = new short[capacity];
+			cookTimes = new short[capacity];
+			servings = new byte[capacity];
+			nameRanks = new int[capacity];
+			nameTermCounts = new byte[capacity];
+			ingredientTermCounts = new short[capacity];
+		}
+
+		/**
+		 * Returns a copy of the page with every column grown to the specified capacity.
+		 * @param capacity the new capacity.
+		 * @return the grown page.
+		 */
+		Page grow(int capacity) {
+			Page result = new Page(capacity);
+			int length = servings.length;
+			System.arraycopy(prepTimes, 0, result.prepTimes, 0, length);
+			System.arraycopy(inactivePrepTimes, 0, result.inactivePrepTimes, 0, length);
+			System.arraycopy(cookTimes, 0, result.cookTimes, 0, length);
+			System.arraycopy(servings, 0, result.servings, 0, length);
+			System.arraycopy(nameRanks, 0, result.nameRanks, 0, length);
+			System.arraycopy(nameTermCounts, 0, result.nameTermCounts, 0, length);
+			System.arraycopy(ingredientTermCounts, 0, result.ingredientTermCounts, 0, length);
+
+			return result;
+		}
+	}
+
+	// STATE VARIABLES
+	private Page[] pages = new Page[1]; // indexed by packId, null for packs without Recipes
+	private long nameTermTotal; // sum of the name term counts of all Recipes
+	private long ingredientTermTotal; // sum of the ingredient term counts of all Recipes
+
+	/**
+	 * Returns the recipeId's whose number of servings lies within a range, scanning the servings column.
+	 * @param minServings the smallest number of servings.
+	 * @param maxServings the largest number of servings.
+	 * @return a new RecipeBitSet of the matching recipeId's, including empty slots if the range includes 0.
+	 */
+	RecipeBitSet filterByServings(int minServings, int maxServings) {
+		RecipeBitSet result = new RecipeBitSet();
+
+		for (int packId = 0; packId < pages.length; packId++) {
+			Page page = pages[packId];
+			if (page == null)
+				continue;
+
+			int firstRecipeId = packId << RecipeDatabase.PACK_ID_SHIFT;
+			byte[] servings = page.servings;
+			for (int i = 0; i < servings.length; i++) {
+				if (servings[i] >= minServings && servings[i] <= maxServings)
+					result.set(firstRecipeId + i);
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Returns the recipeId's whose total time, prep plus inactive prep plus cook time, is at most the specified time, scanning the time columns.
+	 * @param maxTimeInMin the longest total time in minutes.
+	 * @return a new RecipeBitSet of the matching recipeId's, including empty slots.
+	 */
+	RecipeBitSet filterByTotalTime(int maxTimeInMin) {
+		RecipeBitSet result = new RecipeBitSet();
+
+		for (int packId = 0; packId < pages.length; packId++) {
+			Page page = pages[packId];
+			if (page == null)
+				continue;
+
+			int firstRecipeId = packId << RecipeDatabase.PACK_ID_SHIFT;
+			short[] prepTimes = page.prepTimes;
+			short[] inactivePrepTimes = page.inactivePrepTimes;
+			short[] cookTimes = page.cookTimes;
+			for (int i = 0; i < prepTimes.length; i++) {
+				if (prepTimes[i] + inactivePrepTimes[i] + cookTimes[i] <= maxTimeInMin)
+					result.set(firstRecipeId + i);
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Returns the number of index terms in the ingredient names of a Recipe.
+	 * @param recipeId the unique identifier of a loaded Recipe.
+	 * @return the ingredient term count.
+	 */
+	int ingredientTermCount(int recipeId) {
+		return pages[recipeId >> RecipeDatabase.PACK_ID_SHIFT].ingredientTermCounts[recipeId & PAGE_MASK];
+	}
+
+	/**
+	 * Returns the sum of the ingredient term counts of all Recipes.
+	 * @return the ingredient term total.
+	 */
+	long ingredientTermTotal() {
+		return ingredientTermTotal;
+	}
+
+	/**
+	 * Returns the rank of a Recipe name in the name order of all loaded Recipes.
+	 * @param recipeId the unique identifier of a loaded Recipe.
+	 * @return the name rank.
+	 */
+	int nameRank(int recipeId) {
+		return pages[recipeId >> RecipeDatabase.PACK_ID_SHIFT].nameRanks[recipeId & PAGE_MASK];
+	}
+
+	/**
+	 * Returns the number of index terms in the name of a Recipe.
+	 * @param recipeId the unique identifier of a loaded Recipe.
+	 * @return the name term count.
+	 */
+	int nameTermCount(int recipeId) {
+		return pages[recipeId >> RecipeDatabase.PACK_ID_SHIFT].nameTermCounts[recipeId & PAGE_MASK];
+	}
+
+	/**
+	 * Returns the sum of the name term counts of all Recipes.
+	 * @return the name term total.
+	 */
+	long nameTermTotal() {
+		return nameTermTotal;
+	}
+
+	/**
+	 * Copies the scalar attributes of a Recipe into the columns, replacing those of any Recipe with the same recipeId.
+	 * @param recipe the Recipe, with a non-negative recipeId.
+	 */
+	void put(Recipe recipe) {
+		int recipeId = recipe.recipeId;
+		int packId = recipeId >> RecipeDatabase.PACK_ID_SHIFT;
+		int index = recipeId & PAGE_MASK;
+
+		// grow the page table to the packId, then the page to the index
+		if (packId >= pages.length) {
+			Page[] newPages = new Page[packId + 1];
+			System.arraycopy(pages, 0, newPages, 0, pages.length);
+			pages = newPages;
+		}
+
+		Page page = pages[packId];
+		if (page == null) {
+			page = new Page(Math.max(INITIAL_CAPACITY, index + 1));
+			pages[packId] = page;
+		} else if (index >= page.servings.length) {
+			page = page.grow(Math.min(Math.max(page.servings.length * 2, index + 1), PAGE_MASK + 1));
+			pages[packId] = page;
+		}
+
+		page.prepTimes[index] = recipe.recipeTime.prepTimeInMin;
+		page.inactivePrepTimes[index] = recipe.recipeTime.inactivePrepTimeInMin;
+		page.cookTimes[index] = recipe.recipeTime.cookTimeInMin;
+		page.servings[index] = recipe.numOfServings;
+	}
+
+	/**
+	 * Removes the columns of all Recipes of a pack.
+	 * @param packId the unique identifier of the pack.
+	 */
+	void removePack(int packId) {
+		if (packId < 0 || packId >= pages.length || pages[packId] == null)
+			return;
+
+		Page page = pages[packId];
+		for (int i = 0; i < page.servings.length; i++) {
+			nameTermTotal -= page.nameTermCounts[i];
+			ingredientTermTotal -= page.ingredientTermCounts[i];
+		}
+		pages[packId] = null;
+	}
+
+	/**
+	 * Sets the rank of a Recipe name in the name order of all loaded Recipes.
+	 * @param recipeId the unique identifier of a loaded Recipe.
+	 * @param nameRank the name rank.
+	 */
+	void setNameRank(int recipeId, int nameRank) {
+		pages[recipeId >> RecipeDatabase.PACK_ID_SHIFT].nameRanks[recipeId & PAGE_MASK] = nameRank;
+	}
+
+	/**
+	 * Sets the number of index terms in the name and in the ingredient names of a Recipe, updating the totals.
+	 * Counts beyond the range of their column are stored as the largest value of the column.
+	 * @param recipeId the unique identifier of a loaded Recipe.
+	 * @param nameTermCount the name term count.
+	 * @param ingredientTermCount the ingredient term count.
+	 */
+	void setTermCounts(int recipeId, int nameTermCount, int ingredientTermCount) {
+		Page page = pages[recipeId >> RecipeDatabase.PACK_ID_SHIFT];
+		int index = recipeId & PAGE_MASK;
+
+		nameTermTotal -= page.nameTermCounts[index];
+		ingredientTermTotal -= page.ingredientTermCounts[index];
+		page.nameTermCounts[index] = (byte) Math.min(nameTermCount, Byte.MAX_VALUE);
+		page.ingredientTermCounts[index] = (short) Math.min(ingredientTermCount, Short.MAX_VALUE);
+		nameTermTotal += page.nameTermCounts[index];
+		ingredientTermTotal += page.ingredientTermCounts[index];
+	}
+}
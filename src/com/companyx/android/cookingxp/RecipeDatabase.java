@@ -1,20 +1,31 @@
 package com.companyx.android.cookingxp;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
-import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
 import com.companyx.android.cookingxp.R;
 
 import android.annotation.SuppressLint;
 import android.content.Context;
 import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
 
 /**
  * Recipe Database
@@ -33,21 +44,63 @@ public final class RecipeDatabase {
 	public static final byte TYPE_SEAFOOD = 1;
 	public static final byte TYPE_PRODUCE = 2;
 	
-	private static Set<String> meats; // set containing meats, used to screen for vegetarian recipes
-	private static Map<String, Byte> foodTypeMap; // maps ingredient keywords to their type category
+	// CATEGORIES, recipes containing any of the category keywords, except vegetarian recipes which contain none of the meats
+	public static final int[] CHICKEN = {R.string.chicken};
+	public static final int[] PORK = {R.string.bacon, R.string.ham, R.string.pork};
+	public static final int[] BEEF = {R.string.beef, R.string.steak};
+	private static final int[][] CATEGORY_KEYWORDS = {MEAT, SEAFOOD, PRODUCE, CHICKEN, PORK, BEEF}; // indexed by category
+	
+	public static final int CATEGORY_MEAT = 0;
+	public static final int CATEGORY_SEAFOOD = 1;
+	public static final int CATEGORY_PRODUCE = 2;
+	public static final int CATEGORY_CHICKEN = 3;
+	public static final int CATEGORY_PORK = 4;
+	public static final int CATEGORY_BEEF = 5;
+	public static final int CATEGORY_VEGETARIAN = 6;
+	
+	private static Set<String> meats; // set containing the index terms of meats, used to screen for vegetarian recipes
+	private static Map<String, Byte> foodTypeMap; // maps the index terms of ingredient keywords to their type category
 	
 	// MEASUREMENT ALIASES
 	public static final String[] POUNDS_ALIASES = {"lb", "lbs", "pound", "pounds"};
 	public static final String POUNDS = "pounds";
 	private Map<String, String> measurementAliases; // maps measurement alias to the preferred measurement name, i.e. "lbs" to "pounds"
 	
+	// RECIPE PACKS
+	public static final int BASE_PACK = 0; // packId of the recipes shipped with the app, whose recipeId's are unchanged
+	static final int PACK_ID_SHIFT = 20; // each pack owns the 2^20 recipeId's starting at packId << PACK_ID_SHIFT
+	static final int MAX_PACK_ID = Integer.MAX_VALUE >> PACK_ID_SHIFT;
+	
+	// FUZZY SEARCH
+	private static final int MIN_FUZZY_LENGTH = 3; // shorter search terms must match exactly
+	private static final int MIN_FUZZY_LENGTH_TWO_EDITS = 6; // shorter search terms tolerate one edit, longer ones two
+	private static final int MAX_FUZZY_TERMS = 50; // largest number of index terms a misspelled search term expands to
+	
+	// PAGING
+	public static final int FIRST_PAGE = 0; // continuation token of the first page of every query
+	public static final int NO_MORE_PAGES = -1; // continuation token after the last page of a query
+	
 	// STATE VARIABLES
-	private Map<String, Set<Integer>> indexMap; // maps search word to Set of recipeId's
-	private Map<Integer, Recipe> idMap; // maps recipeId to corresponding recipe
-	private Set<Integer> favoriteRecipes; // set containing recipeId's of favorite recipes
-	private Map<Integer, Byte> shoppingListRecipes; // maps recipeId to shopping list quantity
-	private Set<Integer> vegetarianRecipes; // set containing recipeId's of vegetarian recipes
+	private Map<String, PostingList> indexMap; // maps search word to sorted PostingList of recipeId's
+	private Map<String, PostingList> nameIndexMap; // maps search word to PostingList of recipeId's with the word in the name, for ranking
+	private Map<String, PostingList> repeatedIndexMap; // maps search word to PostingList of recipeId's with the word more than once, for ranking
+	private RecipeStore recipeStore; // maps recipeId to corresponding recipe
+	private RecipeBitSet unlockedRecipes; // set containing recipeId's of unlocked recipes
+	private RecipeBitSet favoriteRecipes; // set containing recipeId's of favorite recipes
+	private RecipeBitSet shoppingListRecipes; // set containing recipeId's of shopping list recipes
+	private Map<Integer, Byte> shoppingListQuantities; // maps recipeId to shopping list quantity
+	private RecipeBitSet vegetarianRecipes; // set containing recipeId's of vegetarian recipes
 	private Map<Short, Set<Integer>> boxMap; // maps boxId to Set of RecipeId's
+	private RecipeColumns recipeColumns; // scalar attributes of all recipes in parallel primitive arrays
+	private Recipe[] nameOrder; // all Recipes sorted by name, indexed by name rank, null until ranked after a change
+	private String[][] categoryKeywords; // index terms of the keywords of each category, indexed by category
+	private RecipeBitSet[] categoryRecipes; // recipeId's of each category, indexed by category, null until categorized after a change
+	private volatile TermDictionary termDictionary; // sorted search words for completion, null until built after a change; volatile as search suggestions read it off the UI thread
+	private RecipeQueryCache queryCache; // results of recent list queries, invalidated by every change to the data behind them
+	
+	// STARTUP
+	private FutureTask<Void> loadTask; // background load started by loadAsync(), null until started
+	private List<Runnable> readyListeners; // listeners waiting for loadTask, null once dispatched
 	
 	// SINGLETON
 	private static RecipeDatabase holder;
@@ -58,18 +111,23 @@ public final class RecipeDatabase {
 	
 	/**
 	 * Class representing a recipe.
+	 * A Recipe either holds its ingredients and directions directly, or is a header-only Recipe whose body is loaded on demand from a RecipeBodySource.
 	 */
 	static class Recipe {
 		int recipeId;
 		String name;
 		String author;
-		List<RecipeIngredient> ingredients;
-		List<RecipeDirection> directions;
 		List<Integer> linkedRecipes;
 		List<Short> boxes;
 		RecipeTime recipeTime;
 		byte numOfServings;
-		boolean unlocked;
+		
+		// BODY
+		private List<RecipeIngredient> ingredients; // null for header-only Recipes
+		private List<RecipeDirection> directions; // null for header-only Recipes
+		private List<String> ingredientNames; // indexable ingredient names of header-only Recipes
+		private RecipeBodySource bodySource; // null if the body is held directly
+		int bodyOffset; // location of the body within the bodySource
 		
 		Recipe(int recipeId, String name, String author, List<RecipeIngredient> ingredients, List<RecipeDirection> directions, List<Integer> linkedRecipes, List<Short> boxes, RecipeTime recipeTime, byte numOfServings) {
 			this.recipeId = recipeId;
@@ -81,7 +139,112 @@ public final class RecipeDatabase {
 			this.boxes = boxes;
 			this.recipeTime = recipeTime;
 			this.numOfServings = numOfServings;
-			unlocked = false;
+		}
+		
+		Recipe(int recipeId, String name, String author, List<String> ingredientNames, List<Integer> linkedRecipes, List<Short> boxes, RecipeTime recipeTime, byte numOfServings, RecipeBodySource bodySource, int bodyOffset) {
+			this(recipeId, name, author, null, null, linkedRecipes, boxes, recipeTime, numOfServings);
+			this.ingredientNames = ingredientNames;
+			this.bodySource = bodySource;
+			this.bodyOffset = bodyOffset;
+		}
+		
+		/**
+		 * Returns the List of RecipeDirections, loading the body if necessary.
+		 * @return the List of RecipeDirections.
+		 */
+		List<RecipeDirection> getDirections() {
+			return (bodySource == null) ? directions : bodySource.getDirections(this);
+		}
+		
+		/**
+		 * Returns the List of ingredient names used for indexing, without loading the body.
+		 * @return the List of ingredient names.
+		 */
+		List<String> getIngredientNames() {
+			if (ingredientNames != null)
+				return ingredientNames;
+			
+			List<String> result = new ArrayList<String>(ingredients.size());
+			for (RecipeIngredient ri : ingredients)
+				result.add(ri.ingredientName);
+			
+			return result;
+		}
+		
+		/**
+		 * Returns the List of RecipeIngredients, loading the body if necessary.
+		 * @return the List of RecipeIngredients.
+		 */
+		List<RecipeIngredient> getIngredients() {
+			return (bodySource == null) ? ingredients : bodySource.getIngredients(this);
+		}
+	}
+	
+	/**
+	 * Orders Recipes by name, duplicate names by recipeId.
+	 */
+	private static final Comparator<Recipe> BY_NAME = new Comparator<Recipe>() {
+		@Override
+		public int compare(Recipe a, Recipe b) {
+			int result = a.name.compareTo(b.name);
+			if (result != 0)
+				return result;
+			
+			return (a.recipeId < b.recipeId) ? -1 : ((a.recipeId == b.recipeId) ? 0 : 1);
+		}
+	};
+	
+	/**
+	 * Orders objects by their String representation.
+	 */
+	private static final Comparator<Object> BY_STRING = new Comparator<Object>() {
+		@Override
+		public int compare(Object a, Object b) {
+			return a.toString().compareTo(b.toString());
+		}
+	};
+	
+	/**
+	 * Source of ingredients and directions for header-only Recipes.
+	 * Implementations hold a bounded number of loaded bodies and parse the rest on demand from Recipe.bodyOffset.
+	 */
+	interface RecipeBodySource {
+		/**
+		 * Returns the List of RecipeDirections of a header-only Recipe.
+		 * @param recipe the header-only Recipe.
+		 * @return the List of RecipeDirections.
+		 */
+		List<RecipeDirection> getDirections(Recipe recipe);
+		
+		/**
+		 * Returns the List of RecipeIngredients of a header-only Recipe.
+		 * @param recipe the header-only Recipe.
+		 * @return the List of RecipeIngredients.
+		 */
+		List<RecipeIngredient> getIngredients(Recipe recipe);
+	}
+	
+	/**
+	 * Destination of parsed Recipes, fed one Recipe at a time in load order.
+	 */
+	interface RecipeSink {
+		/**
+		 * Accepts the next parsed Recipe, blocking while the sink is full.
+		 * @param recipe the parsed Recipe.
+		 * @throws InterruptedException if interrupted while waiting for space.
+		 */
+		void accept(Recipe recipe) throws InterruptedException;
+	}
+	
+	/**
+	 * RecipeSink collecting Recipes into a List, never blocks.
+	 */
+	static class RecipeList extends ArrayList<Recipe> implements RecipeSink {
+		private static final long serialVersionUID = 1L;
+		
+		@Override
+		public void accept(Recipe recipe) {
+			add(recipe);
 		}
 	}
 	
@@ -147,6 +310,22 @@ public final class RecipeDatabase {
 		}
 	}
 	
+	/**
+	 * Class which holds one page of a query result, sorted by name, and the continuation token of the next page.
+	 * The token is the name rank the next page starts from; it stays valid while no Recipes are added or removed.
+	 */
+	static class RecipePage {
+		List<Recipe> recipes;
+		int nextToken; // NO_MORE_PAGES after the last page
+		int totalCount; // number of Recipes on all pages of the query
+		
+		RecipePage(List<Recipe> recipes, int nextToken, int totalCount) {
+			this.recipes = recipes;
+			this.nextToken = nextToken;
+			this.totalCount = totalCount;
+		}
+	}
+	
 	/**
 	 * Returns the singleton instance of the Recipe database.
 	 * @param c the calling context.
@@ -165,7 +344,28 @@ public final class RecipeDatabase {
 	 */
 	private RecipeDatabase(Context c) {
 		context = c;
+		readyListeners = new ArrayList<Runnable>();
+		resetDatabase();
+	}
+	
+	/**
+	 * Constructor for offline tools running without an Android Context, e.g. RecipeBenchmark.
+	 * Preferences are unavailable, so favorites and the shopping list stay empty.
+	 * @param meatKeywords the meat keywords used to screen for vegetarian recipes.
+	 */
+	RecipeDatabase(Set<String> meatKeywords) {
+		readyListeners = new ArrayList<Runnable>();
 		resetDatabase();
+		
+		for (String keyword : meatKeywords) {
+			for (String meat : TextAnalyzer.analyze(keyword)) {
+				meats.add(meat);
+				foodTypeMap.put(meat, TYPE_MEAT);
+			}
+		}
+		
+		// only the meat category is known without resources
+		categoryKeywords[CATEGORY_MEAT] = meats.toArray(new String[meats.size()]);
 	}
 	
 	/**
@@ -173,7 +373,8 @@ public final class RecipeDatabase {
 	 * @param recipeId the unique identifier of the Recipe to add to favoriteRecipes. 
 	 */
 	public void addFavorite(int recipeId) {
-		favoriteRecipes.add(recipeId);
+		favoriteRecipes.set(recipeId);
+		queryCache.invalidate();
 	}
 	
 	/**
@@ -188,15 +389,13 @@ public final class RecipeDatabase {
 		int recipeId = newRecipe.recipeId;
 		
 		// INDEX ID
-		idMap.put(recipeId, newRecipe);
-		vegetarianRecipes.add(recipeId); // removed during indexing if found to contain meat ingredient(s)
-		
-		// INDEX RECIPE NAME
-		index(newRecipe.name, recipeId);
+		recipeStore.put(newRecipe);
+		recipeColumns.put(newRecipe);
+		recipesChanged();
+		vegetarianRecipes.set(recipeId); // removed during indexing if found to contain meat ingredient(s)
 		
-		// INDEX INGREDIENT NAMES
-		for (RecipeIngredient ri : newRecipe.ingredients)
-			index(ri.ingredientName, recipeId);
+		// INDEX RECIPE NAME AND INGREDIENT NAMES
+		index(newRecipe);
 		
 		// INDEX BOXES
 		for (short boxId : newRecipe.boxes) {
@@ -213,7 +412,100 @@ public final class RecipeDatabase {
 	 * @return a list of all recipes, sorted by name.
 	 */
 	public List<Recipe> allRecipes() {
-		return getRecipesById(idMap.keySet());
+		List<Recipe> result = queryCache.get("all");
+		if (result != null)
+			return result;
+		
+		// already in name order, FILTER OUT LOCKED RECIPES
+		result = new ArrayList<Recipe>();
+		for (Recipe r : rankNames()) {
+			if (unlockedRecipes.get(r.recipeId))
+				result.add(r);
+		}
+		
+		return queryCache.put("all", result);
+	}
+	
+	/**
+	 * Returns one page of all recipes, sorted by name, as in allRecipes().
+	 * @param token the continuation token of the page, FIRST_PAGE or the nextToken of the previous page.
+	 * @param pageSize the largest number of recipes on the page.
+	 * @return the page of recipes and the continuation token of the next page.
+	 */
+	public RecipePage allRecipes(int token, int pageSize) {
+		return getRecipePage("page all", unlockedRecipes, token, pageSize);
+	}
+	
+	/**
+	 * Helper function which builds the RecipeBitSet of every category from the search index, once after loading and again after Recipes were added or removed.
+	 * Opening a category then only filters the prebuilt set by unlock status, instead of searching for every keyword.
+	 * @return the RecipeBitSet of every category except CATEGORY_VEGETARIAN, indexed by category.
+	 */
+	private RecipeBitSet[] categorize() {
+		if (categoryRecipes != null)
+			return categoryRecipes;
+		
+		RecipeBitSet[] result = new RecipeBitSet[CATEGORY_KEYWORDS.length];
+		for (int category = 0; category < result.length; category++) {
+			result[category] = new RecipeBitSet();
+			
+			for (String keyword : categoryKeywords[category]) {
+				PostingList postings = indexMap.get(keyword);
+				if (postings == null)
+					continue;
+				
+				for (int recipeId : postings.toArray())
+					result[category].set(recipeId);
+			}
+		}
+		
+		categoryRecipes = result;
+		return result;
+	}
+	
+	/**
+	 * Helper function which builds the term dictionary of the search index, once after loading and again after Recipes were added or removed.
+	 * Search suggestions only read the dictionary published here, as they run on a binder thread that must never build it from an index being loaded.
+	 * @return the term dictionary.
+	 */
+	private TermDictionary dictionary() {
+		TermDictionary result = termDictionary;
+		if (result == null) {
+			result = new TermDictionary(indexMap);
+			termDictionary = result;
+		}
+		
+		return result;
+	}
+	
+	/**
+	 * Helper function which runs the waiting readiness listeners on the UI thread once loading has finished.
+	 * A failed load is rethrown on the UI thread, so it surfaces the same way as when loading ran there.
+	 */
+	private void dispatchReady() {
+		final List<Runnable> listeners;
+		synchronized (this) {
+			listeners = readyListeners;
+			readyListeners = null;
+		}
+		
+		new Handler(Looper.getMainLooper()).post(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					loadTask.get();
+				} catch (ExecutionException e) {
+					if (e.getCause() instanceof RuntimeException)
+						throw (RuntimeException) e.getCause();
+					throw new RuntimeException(e.getCause());
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				
+				for (Runnable listener : listeners)
+					listener.run();
+			}
+		});
 	}
 	
 	/**
@@ -222,10 +514,73 @@ public final class RecipeDatabase {
 	 * @return the Recipe corresponding to the unique Id, null if non-existent or invalid Id.
 	 */
 	public Recipe findRecipeById (int recipeId) {
-		if (recipeId < 0)
-			return null;
+		return recipeStore.get(recipeId);
+	}
+	
+	/**
+	 * Builds the state derived from the loaded Recipes once loading has finished: compresses the search indexes, ranks the names, categorizes and builds the term dictionary.
+	 * Called after Recipes were added or removed; without it that state is built by the first query needing it.
+	 */
+	void finishLoading() {
+		freezeIndex();
+		rankNames();
+		categorize();
+		dictionary();
+	}
+	
+	/**
+	 * Helper function which sorts and compresses every PostingList of the search indexes once loading has finished.
+	 */
+	private void freezeIndex() {
+		for (PostingList postings : indexMap.values())
+			postings.freeze();
+		for (PostingList postings : nameIndexMap.values())
+			postings.freeze();
+		for (PostingList postings : repeatedIndexMap.values())
+			postings.freeze();
+	}
+	
+	/**
+	 * Helper function which assigns every Recipe its rank in the name order of all loaded Recipes, once after loading and again after Recipes were added or removed.
+	 * The ranks are kept in recipeColumns; lists are then sorted by name by sorting ranks, without comparing names.
+	 * @return all Recipes sorted by name, indexed by name rank.
+	 */
+	private Recipe[] rankNames() {
+		if (nameOrder != null)
+			return nameOrder;
+		
+		Recipe[] order = recipeStore.values().toArray(new Recipe[recipeStore.size()]);
+		Arrays.sort(order, BY_NAME);
+		for (int i = 0; i < order.length; i++)
+			recipeColumns.setNameRank(order[i].recipeId, i);
+		
+		nameOrder = order;
+		return order;
+	}
+	
+	/**
+	 * Returns a List of Recipes of the specified category, sorted by name.
+	 * @param category the category, one of the CATEGORY constants.
+	 * @return a List of Recipes of the category, sorted by name.
+	 */
+	public List<Recipe> getRecipesByCategory(int category) {
+		if (category == CATEGORY_VEGETARIAN)
+			return getVegetarianRecipes();
+		
+		List<Recipe> result = queryCache.get("category " + category);
 		
-		return idMap.get(recipeId);
+		return (result != null) ? result : queryCache.put("category " + category, getRecipesById(categorize()[category]));
+	}
+	
+	/**
+	 * Returns one page of the Recipes of the specified category, sorted by name.
+	 * @param category the category, one of the CATEGORY constants.
+	 * @param token the continuation token of the page, FIRST_PAGE or the nextToken of the previous page.
+	 * @param pageSize the largest number of Recipes on the page.
+	 * @return the page of Recipes and the continuation token of the next page.
+	 */
+	public RecipePage getRecipesByCategory(int category, int token, int pageSize) {
+		return getRecipePage("page category " + category, (category == CATEGORY_VEGETARIAN) ? vegetarianRecipes : categorize()[category], token, pageSize);
 	}
 	
 	/**
@@ -233,7 +588,55 @@ public final class RecipeDatabase {
 	 * @return a List of favorite Recipes, sorted by name.
 	 */
 	public List<Recipe> getFavoriteRecipes() {
-		return getRecipesById(favoriteRecipes);
+		List<Recipe> result = queryCache.get("favorites");
+		
+		return (result != null) ? result : queryCache.put("favorites", getRecipesById(favoriteRecipes));
+	}
+	
+	/**
+	 * Returns one page of favorite Recipes, sorted by name.
+	 * @param token the continuation token of the page, FIRST_PAGE or the nextToken of the previous page.
+	 * @param pageSize the largest number of Recipes on the page.
+	 * @return the page of Recipes and the continuation token of the next page.
+	 */
+	public RecipePage getFavoriteRecipes(int token, int pageSize) {
+		return getRecipePage("page favorites", favoriteRecipes, token, pageSize);
+	}
+	
+	/**
+	 * Returns the number of distinct terms in the search index.
+	 * @return the number of index terms.
+	 */
+	public int getIndexTermCount() {
+		return indexMap.size();
+	}
+	
+	/**
+	 * Returns the number of postings in the search index, the sum over all terms of the number of Recipes containing the term.
+	 * @return the number of postings.
+	 */
+	public long getIndexPostingCount() {
+		long result = 0;
+		for (PostingList postings : indexMap.values())
+			result += postings.size();
+		
+		return result;
+	}
+	
+	/**
+	 * Returns the number of list queries answered from the query cache.
+	 * @return the number of query cache hits.
+	 */
+	public int getQueryCacheHits() {
+		return queryCache.getHits();
+	}
+	
+	/**
+	 * Returns the number of list queries computed because their result was not cached or outdated.
+	 * @return the number of query cache misses.
+	 */
+	public int getQueryCacheMisses() {
+		return queryCache.getMisses();
 	}
 	
 	/**
@@ -242,7 +645,7 @@ public final class RecipeDatabase {
 	 * @return the quantity of the specified Recipe stored in the shopping list.
 	 */
 	public byte getQuantity(int recipeId) {
-		Byte result = shoppingListRecipes.get(recipeId);
+		Byte result = shoppingListQuantities.get(recipeId);
 		
 		return (result == null) ? 0 : result;
 	}
@@ -253,7 +656,32 @@ public final class RecipeDatabase {
 	 * @return a List of Recipes applicable to the specified Box, sorted by name.
 	 */
 	public List<Recipe> getRecipesByBox(short boxId) {
-		return getRecipesById(boxMap.get(boxId));
+		List<Recipe> result = queryCache.get("box " + boxId);
+		
+		return (result != null) ? result : queryCache.put("box " + boxId, getRecipesById(boxMap.get(boxId)));
+	}
+	
+	/**
+	 * Returns a List of Recipes serving a number of people within the specified range, sorted by name.
+	 * @param minServings the smallest number of servings.
+	 * @param maxServings the largest number of servings.
+	 * @return a List of Recipes serving a number of people within the range, sorted by name.
+	 */
+	public List<Recipe> getRecipesByServings(int minServings, int maxServings) {
+		List<Recipe> result = queryCache.get("servings " + minServings + " " + maxServings);
+		
+		return (result != null) ? result : queryCache.put("servings " + minServings + " " + maxServings, getRecipesById(recipeColumns.filterByServings(minServings, maxServings)));
+	}
+	
+	/**
+	 * Returns a List of Recipes whose total prep, inactive prep and cook time is at most the specified time, sorted by name.
+	 * @param maxTimeInMin the longest total time in minutes.
+	 * @return a List of Recipes ready within the specified time, sorted by name.
+	 */
+	public List<Recipe> getRecipesByTime(int maxTimeInMin) {
+		List<Recipe> result = queryCache.get("time " + maxTimeInMin);
+		
+		return (result != null) ? result : queryCache.put("time " + maxTimeInMin, getRecipesById(recipeColumns.filterByTotalTime(maxTimeInMin)));
 	}
 	
 	/**
@@ -262,29 +690,169 @@ public final class RecipeDatabase {
 	 * @return the List of Recipes corresponding to the Set of recipeId's, sorted by name.
 	 */
 	List<Recipe> getRecipesById(Set<Integer> recipeIdSet) {
-		List<Recipe> result = new ArrayList<Recipe>();
+		if (recipeIdSet == null)
+			return new ArrayList<Recipe>();
+		
+		Recipe[] order = rankNames();
+		int[] ranks = new int[recipeIdSet.size()];
+		int count = 0;
+		for (int recipeId : recipeIdSet)
+			count = addRank(ranks, count, recipeId);
+		
+		return getRecipesByRank(order, ranks, count);
+	}
+	
+	/**
+	 * Helper function which takes a sorted PostingList of recipeId's and returns the corresponding List of Recipes, sorted by name.
+	 * @param postings the PostingList of recipeId's to retrieve the sorted List for.
+	 * @return the List of Recipes corresponding to the PostingList, sorted by name.
+	 */
+	private List<Recipe> getRecipesById(PostingList postings) {
+		Recipe[] order = rankNames();
+		int[] recipeIds = postings.toArray();
+		int[] ranks = new int[recipeIds.length];
+		int count = 0;
+		for (int recipeId : recipeIds)
+			count = addRank(ranks, count, recipeId);
+		
+		return getRecipesByRank(order, ranks, count);
+	}
+	
+	/**
+	 * Helper function which takes a RecipeBitSet of recipeId's and returns the corresponding List of unlocked Recipes, sorted by name.
+	 * Locked Recipes are filtered out word by word before any Recipe is looked up.
+	 * @param recipeIds the RecipeBitSet of recipeId's to retrieve the sorted List for.
+	 * @return the List of unlocked Recipes corresponding to the RecipeBitSet, sorted by name.
+	 */
+	private List<Recipe> getRecipesById(RecipeBitSet recipeIds) {
+		Recipe[] order = rankNames();
+		int[] unlockedIds = recipeIds.and(unlockedRecipes).toArray();
+		int[] ranks = new int[unlockedIds.length];
+		int count = 0;
+		for (int recipeId : unlockedIds)
+			count = addRank(ranks, count, recipeId);
+		
+		return getRecipesByRank(order, ranks, count);
+	}
+	
+	/**
+	 * Helper function which takes a RecipeBitSet of recipeId's and returns one page of the corresponding unlocked Recipes, sorted by name.
+	 * The unlocked recipeId's are cached under the key, so the following pages skip intersecting them again.
+	 * @param key the cache key of the paged query.
+	 * @param recipeIds the RecipeBitSet of recipeId's to retrieve the page for.
+	 * @param token the continuation token of the page, FIRST_PAGE or the nextToken of the previous page.
+	 * @param pageSize the largest number of Recipes on the page.
+	 * @return the page of unlocked Recipes corresponding to the RecipeBitSet, and the continuation token of the next page.
+	 */
+	private RecipePage getRecipePage(String key, RecipeBitSet recipeIds, int token, int pageSize) {
+		RecipeQueryCache.Matches matches = queryCache.getMatches(key);
+		if (matches == null)
+			matches = queryCache.putMatches(key, recipeIds.and(unlockedRecipes));
+		
+		return getRecipePage(matches, token, pageSize);
+	}
+	
+	/**
+	 * Helper function which takes the unlocked recipeId's of a query and returns one page of the corresponding Recipes, sorted by name.
+	 * Dense results are paged by scanning the name order from the token, so a page visits about pageSize / density Recipes however many are loaded, and no List of the whole result is built.
+	 * Sparse results would make that scan long, so the ranks of all their Recipes are sorted instead and the page is sliced from them, as in getRecipesByRank().
+	 * @param matches the unlocked recipeId's of the query and their number.
+	 * @param token the continuation token of the page, FIRST_PAGE or the nextToken of the previous page.
+	 * @param pageSize the largest number of Recipes on the page.
+	 * @return the page of Recipes and the continuation token of the next page.
+	 */
+	private RecipePage getRecipePage(RecipeQueryCache.Matches matches, int token, int pageSize) {
+		if (pageSize <= 0)
+			throw new IllegalArgumentException("page size not positive: " + pageSize);
+		
+		Recipe[] order = rankNames();
+		int totalCount = matches.count;
+		List<Recipe> result = new ArrayList<Recipe>(Math.min(pageSize, totalCount));
+		if (token < 0)
+			return new RecipePage(result, NO_MORE_PAGES, totalCount);
 		
-		if (recipeIdSet != null) {
-			Map<String, Set<Recipe>> resultTree = new TreeMap<String, Set<Recipe>>();
+		// SPARSE, sort the ranks and slice the page starting at the token, unlocked Recipes are always loaded
+		if (totalCount < order.length / 64) {
+			int[] ranks = matches.recipeIds.toArray();
+			for (int i = 0; i < ranks.length; i++)
+				ranks[i] = recipeColumns.nameRank(ranks[i]);
+			Arrays.sort(ranks);
 			
-			for (int i : recipeIdSet) {
-				Recipe recipe = idMap.get(i);
-				String recipeName = recipe.name;
-				
-				// sort recipes by name, duplicate names OK
-				if (!resultTree.containsKey(recipeName))
-					resultTree.put(recipeName, new HashSet<Recipe>());
-				resultTree.get(recipeName).add(recipe);
+			// the first rank not below the token
+			int from = 0;
+			int high = ranks.length;
+			while (from < high) {
+				int mid = (from + high) >>> 1;
+				if (ranks[mid] < token)
+					from = mid + 1;
+				else
+					high = mid;
 			}
 			
-			// transfer sorted results from Map to List
-			for (Map.Entry<String, Set<Recipe>> entry : resultTree.entrySet()) {
-				for (Recipe r : entry.getValue()) {
-					// FILTER OUT LOCKED RECIPES
-					if (r.unlocked)
-						result.add(r);
-				}
-			}
+			int to = Math.min(ranks.length, from + pageSize);
+			for (int i = from; i < to; i++)
+				result.add(order[ranks[i]]);
+			
+			return new RecipePage(result, (to < ranks.length) ? ranks[to] : NO_MORE_PAGES, totalCount);
+		}
+		
+		// DENSE, scan the name order from the token up to the first Recipe of the next page
+		for (int rank = token; rank < order.length; rank++) {
+			if (!matches.recipeIds.get(order[rank].recipeId))
+				continue;
+			
+			if (result.size() == pageSize)
+				return new RecipePage(result, rank, totalCount);
+			result.add(order[rank]);
+		}
+		
+		return new RecipePage(result, NO_MORE_PAGES, totalCount);
+	}
+	
+	/**
+	 * Helper function which appends the name rank of an unlocked Recipe to an array of ranks.
+	 * @param ranks the array of ranks to append to.
+	 * @param count the number of ranks in the array.
+	 * @param recipeId the unique identifier of the Recipe.
+	 * @return the new number of ranks in the array, unchanged if the Recipe is locked or not loaded.
+	 */
+	private int addRank(int[] ranks, int count, int recipeId) {
+		// FILTER OUT LOCKED RECIPES, favorites and shopping list entries of unloaded packs are kept for when the pack returns
+		if (!unlockedRecipes.get(recipeId) || recipeStore.get(recipeId) == null)
+			return count;
+		
+		ranks[count] = recipeColumns.nameRank(recipeId);
+		return count + 1;
+	}
+	
+	/**
+	 * Helper function which takes the name ranks of Recipes and returns the corresponding List of Recipes, sorted by name.
+	 * Ranks are sorted as primitives, so no names are compared; large result sets are sorted by scanning a bitset of ranks instead.
+	 * @param order all Recipes sorted by name, as returned by rankNames().
+	 * @param ranks the name ranks of the Recipes, each rank at most once.
+	 * @param count the number of ranks in the array.
+	 * @return the List of Recipes corresponding to the ranks, sorted by name.
+	 */
+	private static List<Recipe> getRecipesByRank(Recipe[] order, int[] ranks, int count) {
+		List<Recipe> result = new ArrayList<Recipe>(count);
+		
+		// SPARSE, sort the ranks
+		if (count < order.length / 64) {
+			Arrays.sort(ranks, 0, count);
+			for (int i = 0; i < count; i++)
+				result.add(order[ranks[i]]);
+			
+			return result;
+		}
+		
+		// DENSE, mark the ranks in a bitset and scan it in order
+		long[] bits = new long[(order.length + 63) >>> 6];
+		for (int i = 0; i < count; i++)
+			bits[ranks[i] >>> 6] |= 1L << ranks[i];
+		
+		for (int i = 0; i < bits.length; i++) {
+			for (long word = bits[i]; word != 0; word &= word - 1)
+				result.add(order[(i << 6) + Long.numberOfTrailingZeros(word)]);
 		}
 		
 		return result;
@@ -299,7 +867,7 @@ public final class RecipeDatabase {
 		String result = "";
 		
 		if (!favoriteRecipes.isEmpty()) {
-			for (int i : favoriteRecipes)
+			for (int i : favoriteRecipes.toArray())
 				result += String.valueOf(i) + " ";
 			
 			result = result.substring(0, result.length() - 1); // remove trailing space
@@ -316,8 +884,8 @@ public final class RecipeDatabase {
 	public String getSerializedShoppingList() {
 		String result = "";
 		
-		if (!shoppingListRecipes.isEmpty()) {
-			for (Map.Entry<Integer, Byte> entry : shoppingListRecipes.entrySet())
+		if (!shoppingListQuantities.isEmpty()) {
+			for (Map.Entry<Integer, Byte> entry : shoppingListQuantities.entrySet())
 				result += String.valueOf(entry.getKey()) + " " + String.valueOf(entry.getValue()) + " ";
 			
 			result = result.substring(0, result.length() - 1); // remove trailing space
@@ -338,12 +906,12 @@ public final class RecipeDatabase {
 		Set<String> amountless = new TreeSet<String>(); // sorted set of ingredient names where the amount and measurement is ignored for the shopping list
 		 
 		// for each recipe on the shopping list
-		for (Map.Entry<Integer, Byte> entry : shoppingListRecipes.entrySet()) {
+		for (Map.Entry<Integer, Byte> entry : shoppingListQuantities.entrySet()) {
 			Recipe recipe = findRecipeById(entry.getKey());
 			
-			// ignore locked Recipes
-			if (recipe.unlocked) {
-				List<RecipeIngredient> recipeIngredients = recipe.ingredients;
+			// ignore locked Recipes and Recipes of unloaded packs
+			if (recipe != null && unlockedRecipes.get(recipe.recipeId)) {
+				List<RecipeIngredient> recipeIngredients = recipe.getIngredients();
 				
 				// for each ingredient of each recipe
 				for (RecipeIngredient ri : recipeIngredients) {
@@ -375,9 +943,8 @@ public final class RecipeDatabase {
 			
 			// determine which list this ingredient goes in (meat, seafood, other, etc)
 			Byte category = null;
-			String name[] = ingredientName.split("[\\s\\-]"); // whitespace or hyphen
-			for (String n: name) {
-				category = foodTypeMap.get(n.toLowerCase(Locale.US));
+			for (String term : TextAnalyzer.analyze(ingredientName)) {
+				category = foodTypeMap.get(term);
 				if (category != null)
 					break;
 			}
@@ -407,7 +974,35 @@ public final class RecipeDatabase {
 	 * @return a List of shopping list Recipes, sorted by name.
 	 */
 	public List<Recipe> getShoppingListRecipes() {
-		return getRecipesById(shoppingListRecipes.keySet());
+		List<Recipe> result = queryCache.get("shopping list");
+		
+		return (result != null) ? result : queryCache.put("shopping list", getRecipesById(shoppingListRecipes));
+	}
+	
+	/**
+	 * Returns the number of unlocked Recipes, without building the List of them.
+	 * @return the number of unlocked Recipes.
+	 */
+	public int getUnlockedRecipeCount() {
+		return unlockedRecipes.cardinality();
+	}
+	
+	/**
+	 * Helper function which takes a PostingList of recipeId's and returns the unlocked ones as a RecipeBitSet, for paging.
+	 * @param postings the PostingList of recipeId's, null for none.
+	 * @return a new RecipeBitSet of the unlocked recipeId's of the PostingList.
+	 */
+	private RecipeBitSet getUnlockedIds(PostingList postings) {
+		RecipeBitSet result = new RecipeBitSet();
+		if (postings == null)
+			return result;
+		
+		for (int recipeId : postings.toArray()) {
+			if (unlockedRecipes.get(recipeId))
+				result.set(recipeId);
+		}
+		
+		return result;
 	}
 	
 	/**
@@ -415,29 +1010,87 @@ public final class RecipeDatabase {
 	 * @return a List of vegetarian Recipes, sorted by name.
 	 */
 	public List<Recipe> getVegetarianRecipes() {
-		return getRecipesById(vegetarianRecipes);
+		List<Recipe> result = queryCache.get("vegetarian");
+		
+		return (result != null) ? result : queryCache.put("vegetarian", getRecipesById(vegetarianRecipes));
 	}
 	
 	/**
-	 * Helper function that indexes the given recipe by the words contained in the specified String.
-	 * @param string String containing the words to index the given recipe by.
-	 * @param recipeId the unique identifier for the Recipe being indexed.
+	 * Returns one page of vegetarian Recipes, sorted by name.
+	 * @param token the continuation token of the page, FIRST_PAGE or the nextToken of the previous page.
+	 * @param pageSize the largest number of Recipes on the page.
+	 * @return the page of Recipes and the continuation token of the next page.
 	 */
-	private void index(String string, int recipeId) {
-		// convert to lowercase and parse
-		String[] words = string.toLowerCase(Locale.US).split(" ");
-
-		for (String word : words) {
-			// new word, did not exist previously
-			if (!indexMap.containsKey(word))
-				indexMap.put(word, new HashSet<Integer>());
-
+	public RecipePage getVegetarianRecipes(int token, int pageSize) {
+		return getRecipePage("page vegetarian", vegetarianRecipes, token, pageSize);
+	}
+	
+	/**
+	 * Helper function that indexes the given recipe by the words of its name and ingredient names.
+	 * Also gathers the statistics for ranking search results: the name hits and repeated words of the recipe, and the number of words in each field.
+	 * @param recipe the Recipe being indexed, already added to recipeColumns.
+	 */
+	private void index(Recipe recipe) {
+		int recipeId = recipe.recipeId;
+		
+		// parse into index terms, shared with searching
+		List<String> nameWords = TextAnalyzer.analyze(recipe.name);
+		List<String> words = new ArrayList<String>(nameWords);
+		for (String ingredientName : recipe.getIngredientNames())
+			TextAnalyzer.analyze(ingredientName, words);
+		recipeColumns.setTermCounts(recipeId, nameWords.size(), words.size() - nameWords.size());
+		
+		for (String word : nameWords)
+			addPosting(nameIndexMap, word, recipeId);
+		
+		// sorted, so the occurrences of each word are adjacent
+		Collections.sort(words);
+		for (int i = 0; i < words.size(); i++) {
+			String word = words.get(i);
+			if (i > 0 && word.equals(words.get(i - 1))) {
+				addPosting(repeatedIndexMap, word, recipeId);
+				continue;
+			}
+			
 			// add recipeId to search index
-			indexMap.get(word).add(recipeId);
+			addPosting(indexMap, word, recipeId);
 			
 			// strike from vegetarianRecipes if contains meat
 			if (meats.contains(word))
-				vegetarianRecipes.remove(recipeId);
+				vegetarianRecipes.clear(recipeId);
+		}
+	}
+	
+	/**
+	 * Helper function that adds a recipeId to the PostingList of a word, creating the PostingList for a new word.
+	 * @param map the index to add to.
+	 * @param word the word.
+	 * @param recipeId the unique identifier for the Recipe containing the word.
+	 */
+	private static void addPosting(Map<String, PostingList> map, String word, int recipeId) {
+		PostingList postings = map.get(word);
+		
+		// new word, did not exist previously
+		if (postings == null) {
+			postings = new PostingList();
+			map.put(word, postings);
+		}
+		
+		postings.add(recipeId);
+	}
+	
+	/**
+	 * Helper function that removes a range of recipeId's from the PostingList of every word, dropping words no longer used by any recipe.
+	 * Each PostingList is rewritten at most once, however many of its recipeId's lie in the range.
+	 * @param map the index to remove from.
+	 * @param firstRecipeId the smallest recipeId to remove.
+	 * @param lastRecipeId the largest recipeId to remove.
+	 */
+	private static void removePostings(Map<String, PostingList> map, int firstRecipeId, int lastRecipeId) {
+		for (Iterator<PostingList> i = map.values().iterator(); i.hasNext();) {
+			PostingList postings = i.next();
+			if (postings.removeRange(firstRecipeId, lastRecipeId) && postings.isEmpty())
+				i.remove();
 		}
 	}
 	
@@ -447,10 +1100,57 @@ public final class RecipeDatabase {
 	 * @return true if the recipeId corresponds to a Recipe currently marked as a favorite, false otherwise.
 	 */
 	public boolean isFavorite(int recipeId) {
-		if (favoriteRecipes.contains(recipeId))
-			return true;
+		return favoriteRecipes.get(recipeId);
+	}
+	
+	/**
+	 * Returns true once the background load started by loadAsync() has finished.
+	 * @return true if the Recipes are loaded, false if loading has not started or is still running.
+	 */
+	public synchronized boolean isReady() {
+		return loadTask != null && loadTask.isDone();
+	}
+	
+	/**
+	 * Starts loading all Recipes, favorites and the shopping list on a background thread, so startup does not wait for the data.
+	 * Recipe headers are loaded from the precompiled pack, falling back to the raw text file if the pack is unreadable or was compiled from an older version of the text.
+	 * Only the first call starts loading; later calls return the same handle.
+	 * @return the readiness handle, completing once the database is loaded.
+	 */
+	public synchronized Future<Void> loadAsync() {
+		if (loadTask != null)
+			return loadTask;
 		
-		return false;
+		loadTask = new FutureTask<Void>(new Callable<Void>() {
+			@Override
+			public Void call() {
+				// LOAD RECIPE HEADERS FROM PRECOMPILED PACK, FALL BACK TO RAW TEXT FILE if the pack was not rebuilt after the text was edited
+				boolean packCurrent = RecipePack.isCurrent(context.getResources(), R.raw.master_recipe_pack, R.raw.master_recipe_data);
+				if (!packCurrent || !loadRecipePack(R.raw.master_recipe_pack, BASE_PACK, true)) {
+					RecipeLoader loader = new RecipeLoader(context.getResources().openRawResource(R.raw.master_recipe_data), RecipeDatabase.this);
+					loader.loadDataParallel();
+				}
+				
+				// LOAD FAVORITES
+				loadFavoriteRecipes();
+				
+				// LOAD SHOPPING LIST
+				loadShoppingListRecipes();
+				
+				finishLoading();
+				
+				return null;
+			}
+		}) {
+			@Override
+			protected void done() {
+				dispatchReady();
+			}
+		};
+		
+		new Thread(loadTask, "RecipeDatabaseLoader").start();
+		
+		return loadTask;
 	}
 	
 	/**
@@ -468,27 +1168,40 @@ public final class RecipeDatabase {
 			int recipeId = Integer.valueOf(s);
 			
 			// in case recipe no longer exists
-			if (idMap.containsKey(recipeId))
-				favoriteRecipes.add(recipeId);
+			if (recipeStore.get(recipeId) != null)
+				favoriteRecipes.set(recipeId);
 		}
+		
+		queryCache.invalidate();
 	}
 	
 	/**
 	 * Loads food types into the foodType Map.
 	 */
 	private void loadFoodTypes() {
+		// keywords are analyzed like the indexed words, i.e. "apples" to "apple"
 		for (int i : MEAT) {
-			String meat = context.getString(i).toLowerCase(Locale.US);
-			meats.add(meat);
-			foodTypeMap.put(meat, TYPE_MEAT);
+			for (String meat : TextAnalyzer.analyze(context.getString(i))) {
+				meats.add(meat);
+				foodTypeMap.put(meat, TYPE_MEAT);
+			}
 		}
 			
 		for (int i : SEAFOOD) {
-			foodTypeMap.put(context.getString(i).toLowerCase(Locale.US), TYPE_SEAFOOD);
+			for (String seafood : TextAnalyzer.analyze(context.getString(i)))
+				foodTypeMap.put(seafood, TYPE_SEAFOOD);
 		}
 		
 		for (int i : PRODUCE) {
-			foodTypeMap.put(context.getString(i).toLowerCase(Locale.US), TYPE_PRODUCE);
+			for (String produce : TextAnalyzer.analyze(context.getString(i)))
+				foodTypeMap.put(produce, TYPE_PRODUCE);
+		}
+		
+		for (int category = 0; category < CATEGORY_KEYWORDS.length; category++) {
+			List<String> keywords = new ArrayList<String>();
+			for (int keyword : CATEGORY_KEYWORDS[category])
+				TextAnalyzer.analyze(context.getString(keyword), keywords);
+			categoryKeywords[category] = keywords.toArray(new String[keywords.size()]);
 		}
 	}
 	
@@ -505,6 +1218,140 @@ public final class RecipeDatabase {
 			measurementAliases.put(s, POUNDS);
 	}
 	
+	/**
+	 * Loads all Recipes from a precompiled binary recipe pack stored as a raw resource, alongside the Recipes of other packs.
+	 * The pack's own recipeId's are moved into the range owned by packId, so each pack keeps the same recipeId's across releases and loading order; packId BASE_PACK keeps them unchanged.
+	 * A pack that is already loaded is unloaded once the new pack has been checked, so an updated pack replaces the old one without re-indexing the other packs.
+	 * Recipes of the replaced pack that were unlocked stay unlocked if the new pack still holds them; Recipes new to the pack are unlocked by their Boxes as usual.
+	 * If loading fails after indexing has started, the Recipes indexed so far are unloaded again, so a fallback load of the same recipeId's starts from a clean index.
+	 * In lazy mode only Recipe headers are built; ingredients and directions stay in the pack and are parsed when first requested, with a bounded number of bodies held in memory.
+	 * Into an empty database, the built state is restored from a warm-start snapshot when one exists for the same pack, and saved as one otherwise.
+	 * @param resId the raw resource identifier of the pack.
+	 * @param packId the unique identifier of the pack, from BASE_PACK to MAX_PACK_ID.
+	 * @param lazy true to load Recipe headers only, false to load complete Recipes.
+	 * @return true if the Recipes were loaded, false if the pack could not be read, was built for a different pack version or holds more Recipes than its range.
+	 */
+	public boolean loadRecipePack(int resId, int packId, boolean lazy) {
+		if (packId < BASE_PACK || packId > MAX_PACK_ID)
+			throw new IllegalArgumentException("packId out of range: " + packId);
+		
+		ByteBuffer buffer;
+		
+		try {
+			buffer = RecipePack.open(context.getResources(), resId);
+		} catch (IOException e) {
+			e.printStackTrace();
+			return false;
+		}
+		
+		int recipeCount = RecipePack.recipeCount(buffer);
+		if (recipeCount < 0 || recipeCount > 1 << PACK_ID_SHIFT)
+			return false;
+		
+		RecipePack.BodySource bodySource = null;
+		if (lazy) {
+			bodySource = RecipePack.readBodySource(buffer);
+			if (bodySource == null)
+				return false;
+		}
+		
+		// the pack is valid, replace the loaded one, keeping the unlock progress of the Recipes it had
+		RecipeBitSet unlocked = unlockedRecipes.copyPack(packId);
+		unloadRecipePack(packId);
+		
+		// the snapshot holds the whole database state, so it only applies to a database holding this pack alone
+		boolean useSnapshot = recipeStore.isEmpty();
+		long snapshotKey = useSnapshot ? snapshotKey(buffer, packId) : 0;
+		
+		// WARM START
+		if (useSnapshot) {
+			RecipeSnapshot snapshot = RecipeSnapshot.read(context, snapshotKey, lazy, bodySource);
+			if (snapshot != null) {
+				for (int i = 0; i < snapshot.recipes.size(); i++) {
+					Recipe recipe = snapshot.recipes.get(i);
+					recipeStore.put(recipe);
+					recipeColumns.put(recipe);
+					recipeColumns.setTermCounts(recipe.recipeId, snapshot.nameTermCounts[i], snapshot.ingredientTermCounts[i]);
+				}
+				recipesChanged();
+				indexMap = snapshot.indexMap;
+				nameIndexMap = snapshot.nameIndexMap;
+				repeatedIndexMap = snapshot.repeatedIndexMap;
+				vegetarianRecipes = snapshot.vegetarianRecipes;
+				boxMap = snapshot.boxMap;
+				unlockAgain(unlocked);
+				finishLoading();
+				return true;
+			}
+		}
+		
+		// COLD START, decoding and indexing are pipelined on multi-core devices
+		RecipeIndexer indexer = (Runtime.getRuntime().availableProcessors() > 1) ? new RecipeIndexer(this, RecipeIndexer.DEFAULT_CAPACITY) : null;
+		RecipeSink sink = (indexer != null) ? indexer : new RecipeSink() {
+			@Override
+			public void accept(Recipe recipe) {
+				addRecipe(recipe);
+			}
+		};
+		
+		// move the pack's recipeId's, numbered from 0, into the range owned by the pack
+		if (packId != BASE_PACK) {
+			final RecipeSink target = sink;
+			final int firstRecipeId = packId << PACK_ID_SHIFT;
+			sink = new RecipeSink() {
+				@Override
+				public void accept(Recipe recipe) throws InterruptedException {
+					recipe.recipeId += firstRecipeId;
+					for (int i = 0; i < recipe.linkedRecipes.size(); i++)
+						recipe.linkedRecipes.set(i, recipe.linkedRecipes.get(i) + firstRecipeId);
+					
+					target.accept(recipe);
+				}
+			};
+		}
+		
+		boolean loaded = false;
+		
+		try {
+			if (lazy)
+				RecipePack.readHeaders(buffer, bodySource, sink);
+			else if (!RecipePack.read(buffer, sink))
+				return false;
+			
+			if (indexer != null)
+				indexer.finish().get();
+			loaded = true;
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			throw new RuntimeException(e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		} finally {
+			// stops the worker if decoding failed, no-op once indexing has finished
+			if (indexer != null)
+				indexer.cancel();
+			
+			// remove the partially indexed pack, RecipeStore.put() would otherwise replace its Recipes without unindexing them
+			if (!loaded)
+				unloadRecipePack(packId);
+		}
+		
+		unlockAgain(unlocked);
+		finishLoading();
+		
+		if (useSnapshot) {
+			try {
+				RecipeSnapshot.write(context, snapshotKey, lazy, recipeStore.values(), recipeColumns, indexMap, nameIndexMap, repeatedIndexMap, vegetarianRecipes, boxMap);
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+		
+		return true;
+	}
+	
 	/**
 	 * Load shopping list Recipes into database from a serialized String containing the recipe indexes and respective quantities.
 	 */
@@ -528,8 +1375,8 @@ public final class RecipeDatabase {
 		// load data
 		for (int i = 0; i < length; i++) {
 			// in case recipe no longer exists
-			if (idMap.containsKey(recipeIds[i]))
-				shoppingListRecipes.put(recipeIds[i], recipeQuantities[i]);
+			if (recipeStore.get(recipeIds[i]) != null)
+				updateQuantity(recipeIds[i], recipeQuantities[i]);
 		}
 	}
 	
@@ -552,6 +1399,16 @@ public final class RecipeDatabase {
 		return string;
 	}
 	
+	/**
+	 * Helper function which discards the state derived from the set of loaded Recipes, the name ranks, category sets, term dictionary and cached query results, after Recipes were added or removed.
+	 */
+	private void recipesChanged() {
+		nameOrder = null;
+		categoryRecipes = null;
+		termDictionary = null;
+		queryCache.invalidate();
+	}
+	
 	/**
 	 * Release all system references for immediate garbage collection.
 	 */
@@ -564,7 +1421,8 @@ public final class RecipeDatabase {
 	 * @param recipeId the unique identifier of the Recipe to remove from favoriteRecipes.
 	 */
 	public void removeFavorite(int recipeId) {
-		favoriteRecipes.remove(recipeId);
+		favoriteRecipes.clear(recipeId);
+		queryCache.invalidate();
 	}
 	
 	/**
@@ -572,12 +1430,19 @@ public final class RecipeDatabase {
 	 */
 	@SuppressLint("UseSparseArrays")
 	private void resetDatabase() {
-		indexMap = new HashMap<String, Set<Integer>>();
-		idMap = new HashMap<Integer, Recipe>();
-		favoriteRecipes = new HashSet<Integer>();
-		shoppingListRecipes = new HashMap<Integer, Byte>();
-		vegetarianRecipes = new HashSet<Integer>();
+		indexMap = new HashMap<String, PostingList>();
+		nameIndexMap = new HashMap<String, PostingList>();
+		repeatedIndexMap = new HashMap<String, PostingList>();
+		recipeStore = new RecipeStore();
+		recipeColumns = new RecipeColumns();
+		queryCache = new RecipeQueryCache(RecipeQueryCache.DEFAULT_CAPACITY);
+		unlockedRecipes = new RecipeBitSet();
+		favoriteRecipes = new RecipeBitSet();
+		shoppingListRecipes = new RecipeBitSet();
+		shoppingListQuantities = new HashMap<Integer, Byte>();
+		vegetarianRecipes = new RecipeBitSet();
 		boxMap = new HashMap<Short, Set<Integer>>();
+		recipesChanged();
 		
 		// MEASUREMENT ALIASES
 		measurementAliases = new HashMap<String, String>();
@@ -586,6 +1451,12 @@ public final class RecipeDatabase {
 		// FOOD TYPES
 		meats = new HashSet<String>();
 		foodTypeMap = new HashMap<String, Byte>();
+		categoryKeywords = new String[CATEGORY_KEYWORDS.length][0];
+		
+		// no resources or preferences for offline tools
+		if (context == null)
+			return;
+		
 		loadFoodTypes();
 		
 		sharedPref = context.getSharedPreferences(context.getString(R.string.preference_file_key), Context.MODE_PRIVATE);
@@ -596,10 +1467,134 @@ public final class RecipeDatabase {
 	 * Called by GameData to clear game progress.
 	 */
 	void resetRecipeLocks() {
-		for (Recipe r : idMap.values()) {
-			if (r.unlocked)
-				r.unlocked = false;
+		unlockedRecipes = new RecipeBitSet();
+		queryCache.invalidate();
+	}
+	
+	/**
+	 * Returns a list of all recipes matching the specified boolean query, sorted by name.
+	 * Queries combine search words with AND, OR, NOT and parentheses, i.e. "chicken -bacon (rice OR noodles)", see RecipeQuery; a query without operators matches like searchRecipes().
+	 * @param query String containing the boolean query.
+	 * @return a list of all recipes matching the query, sorted by name.
+	 */
+	public List<Recipe> queryRecipes(String query) {
+		return queryRecipes(query, false);
+	}
+	
+	/**
+	 * Returns a list of all recipes matching the specified boolean query, sorted by name, optionally tolerating typos.
+	 * In fuzzy mode, a search word matching no recipe instead stands for the recipes of the closest index terms, as in searchRecipes(String, boolean).
+	 * @param query String containing the boolean query.
+	 * @param fuzzy true to tolerate misspelled search words.
+	 * @return a list of all recipes matching the query, sorted by name.
+	 */
+	public List<Recipe> queryRecipes(String query, boolean fuzzy) {
+		if (query == null)
+			return null;
+		
+		// the normalized query is the cache key, so equal queries share it regardless of word order and spacing
+		RecipeQuery parsed = new RecipeQuery(query);
+		String key = (fuzzy ? "fuzzy query " : "query ") + parsed;
+		List<Recipe> result = queryCache.get(key);
+		if (result != null)
+			return result;
+		
+		PostingList matches = matchQuery(parsed, fuzzy);
+		return queryCache.put(key, (matches == null) ? new ArrayList<Recipe>() : getRecipesById(matches));
+	}
+	
+	/**
+	 * Returns one page of the recipes matching the specified boolean query, sorted by name, as in queryRecipes(String, boolean).
+	 * The query is parsed and matched once, its unlocked recipeId's are cached under the normalized key for the following pages.
+	 * @param query String containing the boolean query.
+	 * @param fuzzy true to tolerate misspelled search words.
+	 * @param token the continuation token of the page, FIRST_PAGE or the nextToken of the previous page.
+	 * @param pageSize the largest number of recipes on the page.
+	 * @return the page of recipes and the continuation token of the next page.
+	 */
+	public RecipePage queryRecipes(String query, boolean fuzzy, int token, int pageSize) {
+		if (query == null)
+			return null;
+		
+		RecipeQuery parsed = new RecipeQuery(query);
+		String key = (fuzzy ? "page fuzzy query " : "page query ") + parsed;
+		RecipeQueryCache.Matches matches = queryCache.getMatches(key);
+		if (matches == null)
+			matches = queryCache.putMatches(key, getUnlockedIds(matchQuery(parsed, fuzzy)));
+		
+		return getRecipePage(matches, token, pageSize);
+	}
+	
+	/**
+	 * Helper function which returns the recipes matching a parsed boolean query.
+	 * @param query the parsed query.
+	 * @param fuzzy true to match a search word without recipes to the closest index terms instead.
+	 * @return the PostingList of matching recipeId's, null if no recipe matches.
+	 */
+	private PostingList matchQuery(RecipeQuery query, boolean fuzzy) {
+		if (!fuzzy)
+			return query.match(indexMap);
+		
+		// look up every word once, a misspelled word standing for the union of its closest index terms
+		Map<String, PostingList> postingsMap = new HashMap<String, PostingList>();
+		for (String word : query.words()) {
+			PostingList postings = indexMap.get(word);
+			if (postings == null)
+				postings = fuzzyPostings(word);
+			if (postings != null)
+				postingsMap.put(word, postings);
 		}
+		
+		return query.match(postingsMap);
+	}
+	
+	/**
+	 * Returns the recipes best matching the specified search String, most relevant first.
+	 * All search terms must match to return a recipe, as in searchRecipes(); the matches are then ranked with BM25F by RecipeRanker.
+	 * Recipes using a search term more often or in a shorter name or ingredient list rank higher, rare terms count more than common ones, and a term in the name counts more than in an ingredient.
+	 * Only the best limit recipes are selected, so a small limit costs one pass over the matches and no sort.
+	 * @param searchString String containing the specified search term(s).
+	 * @param limit the largest number of recipes to return.
+	 * @return a list of at most limit unlocked recipes matching the specified search String, most relevant first and by name among equally relevant ones.
+	 */
+	public List<Recipe> searchRankedRecipes(String searchString, int limit) {
+		if (searchString == null)
+			return null;
+		
+		Set<String> searchWordSet = new TreeSet<String>();
+		TextAnalyzer.analyze(searchString, searchWordSet);
+		
+		String key = "ranked " + limit + " " + searchWordSet;
+		List<Recipe> result = queryCache.get(key);
+		if (result != null)
+			return result;
+		
+		result = new ArrayList<Recipe>();
+		PostingList matches = match(searchWordSet, false);
+		if (matches == null || limit <= 0)
+			return queryCache.put(key, result);
+		
+		// FILTER OUT LOCKED RECIPES, favorites and shopping list entries of unloaded packs are kept for when the pack returns
+		rankNames();
+		int[] candidates = matches.toArray();
+		int count = 0;
+		for (int recipeId : candidates) {
+			if (unlockedRecipes.get(recipeId) && recipeStore.get(recipeId) != null)
+				candidates[count++] = recipeId;
+		}
+		
+		int[] unlockedCandidates = new int[count];
+		System.arraycopy(candidates, 0, unlockedCandidates, 0, count);
+		
+		// SCORE, every search word matched, so every candidate contains it
+		RecipeRanker ranker = new RecipeRanker(matches, unlockedCandidates, recipeColumns, recipeStore.size());
+		for (String word : searchWordSet)
+			ranker.addTerm(indexMap.get(word).size(), nameIndexMap.get(word), repeatedIndexMap.get(word));
+		
+		for (int recipeId : ranker.top(limit))
+			result.add(recipeStore.get(recipeId));
+		
+		return queryCache.put(key, result);
 	}
 	
 	/**
@@ -609,13 +1604,42 @@ public final class RecipeDatabase {
 	 * @return a list of all recipes matching the specified search String, sorted by name.
 	 */
 	public List<Recipe> searchRecipes(String searchString) {
+		return searchRecipes(searchString, false);
+	}
+	
+	/**
+	 * Returns a list of all recipes matching the specified search String, sorted by name, optionally tolerating typos.
+	 * In fuzzy mode, a search term matching no recipe instead matches the recipes of the closest index terms, e.g. "chiken" matches "chicken".
+	 * @param searchString String containing the specified search term(s).
+	 * @param fuzzy true to tolerate misspelled search terms.
+	 * @return a list of all recipes matching the specified search String, sorted by name.
+	 */
+	public List<Recipe> searchRecipes(String searchString, boolean fuzzy) {
 		if (searchString == null)
 			return null;
 		
 		List<String> s = new ArrayList<String>();
 		s.add(searchString);
 		
-		return searchSetRecipes(s);
+		return search(s, fuzzy);
+	}
+	
+	/**
+	 * Returns one page of the recipes matching the specified search String, sorted by name, optionally tolerating typos as in searchRecipes(String, boolean).
+	 * @param searchString String containing the specified search term(s).
+	 * @param fuzzy true to tolerate misspelled search terms.
+	 * @param token the continuation token of the page, FIRST_PAGE or the nextToken of the previous page.
+	 * @param pageSize the largest number of recipes on the page.
+	 * @return the page of recipes and the continuation token of the next page.
+	 */
+	public RecipePage searchRecipes(String searchString, boolean fuzzy, int token, int pageSize) {
+		if (searchString == null)
+			return null;
+		
+		List<String> s = new ArrayList<String>();
+		s.add(searchString);
+		
+		return searchPage(s, fuzzy, token, pageSize);
 	}
 	
 	/**
@@ -625,52 +1649,160 @@ public final class RecipeDatabase {
 	 * @param searchStrings List of String's containing the specified search term(s).
 	 * @return a list of all recipes matching the specified List of search String's, sorted by name.
 	 */
-	@SuppressLint("UseSparseArrays")
 	public List<Recipe> searchSetRecipes(List<String> searchStrings) {
+		return search(searchStrings, false);
+	}
+	
+	/**
+	 * Returns one page of the recipes matching the specified List of search String's, sorted by name, as in searchSetRecipes(List).
+	 * @param searchStrings List of String's containing the specified search term(s).
+	 * @param token the continuation token of the page, FIRST_PAGE or the nextToken of the previous page.
+	 * @param pageSize the largest number of recipes on the page.
+	 * @return the page of recipes and the continuation token of the next page.
+	 */
+	public RecipePage searchSetRecipes(List<String> searchStrings, int token, int pageSize) {
+		return searchPage(searchStrings, false, token, pageSize);
+	}
+	
+	/**
+	 * Helper function which returns a list of all recipes matching the specified List of search String's, sorted by name.
+	 * @param searchStrings List of String's containing the specified search term(s).
+	 * @param fuzzy true to match a search term without recipes to the closest index terms instead.
+	 * @return a list of all recipes matching the specified List of search String's, sorted by name.
+	 */
+	private List<Recipe> search(List<String> searchStrings, boolean fuzzy) {
+		if (searchStrings == null)
+			return null;
+		
+		Set<Set<String>> searchWordSets = parse(searchStrings);
+		String key = (fuzzy ? "fuzzy " : "search ") + searchWordSets;
+		List<Recipe> cached = queryCache.get(key);
+		if (cached != null)
+			return cached;
+		
+		// convert PostingList of recipeId's to List of sorted Recipes, cache and return
+		PostingList resultList = matchAny(searchWordSets, fuzzy);
+		return queryCache.put(key, (resultList == null) ? new ArrayList<Recipe>() : getRecipesById(resultList));
+	}
+	
+	/**
+	 * Helper function which returns one page of the recipes matching the specified List of search String's, sorted by name.
+	 * @param searchStrings List of String's containing the specified search term(s).
+	 * @param fuzzy true to match a search term without recipes to the closest index terms instead.
+	 * @param token the continuation token of the page, FIRST_PAGE or the nextToken of the previous page.
+	 * @param pageSize the largest number of recipes on the page.
+	 * @return the page of recipes and the continuation token of the next page.
+	 */
+	private RecipePage searchPage(List<String> searchStrings, boolean fuzzy, int token, int pageSize) {
 		if (searchStrings == null)
 			return null;
 		
-		Set<Integer> resultSet = new HashSet<Integer>();
+		Set<Set<String>> searchWordSets = parse(searchStrings);
+		String key = (fuzzy ? "page fuzzy " : "page search ") + searchWordSets;
+		RecipeQueryCache.Matches matches = queryCache.getMatches(key);
+		if (matches == null)
+			matches = queryCache.putMatches(key, getUnlockedIds(matchAny(searchWordSets, fuzzy)));
 		
+		return getRecipePage(matches, token, pageSize);
+	}
+	
+	/**
+	 * Helper function which parses search String's into search words like the indexed words.
+	 * Duplicates are eliminated and the words and word sets are ordered, so equal queries share one cache key regardless of term order.
+	 * @param searchStrings List of String's containing the specified search term(s).
+	 * @return the Set of analyzed search words of each search String.
+	 */
+	private static Set<Set<String>> parse(List<String> searchStrings) {
+		Set<Set<String>> result = new TreeSet<Set<String>>(BY_STRING);
 		for (String searchString : searchStrings) {
-			// parse search terms
-			String[] searchWords = searchString.toLowerCase(Locale.US).split(" ");
-			
-			// eliminate duplicate search terms
-			Set<String> searchWordSet = new HashSet<String>();
-			for (String s : searchWords)
-				searchWordSet.add(s);
-			
-			// number of matches required
-			int numMatchesRequired = searchWordSet.size();
-			
-			// create structure to hold unique recipes and count the number of hits for each
-			Map<Integer, Integer> hitTable = new HashMap<Integer, Integer>();
-			
-			for (String s : searchWordSet) {
-				// get all recipes containing the current word in the name or ingredient list
-				Set<Integer> set = indexMap.get(s);
-				
-				// fill out hitTable
-				if (set != null) {
-					for (int i : set) {
-						Integer count = hitTable.get(i);
-						count = (count == null) ? 1 : (count + 1);
-						
-						hitTable.put(i, count);
-					}
-				}
-			}
+			Set<String> searchWordSet = new TreeSet<String>();
+			TextAnalyzer.analyze(searchString, searchWordSet);
+			result.add(searchWordSet);
+		}
+		
+		return result;
+	}
+	
+	/**
+	 * Helper function which returns the recipes matching any of the specified search word sets, each containing all words of its set.
+	 * @param searchWordSets the analyzed search words of each search String.
+	 * @param fuzzy true to match a search word without recipes to the closest index terms instead.
+	 * @return the PostingList of matching recipeId's, null if no recipe matches.
+	 */
+	private PostingList matchAny(Set<Set<String>> searchWordSets, boolean fuzzy) {
+		PostingList result = null;
+		
+		for (Set<String> searchWordSet : searchWordSets) {
+			// add to matches of previous search Strings
+			PostingList matches = match(searchWordSet, fuzzy);
+			if (matches != null)
+				result = (result == null) ? matches : result.union(matches);
+		}
+		
+		return result;
+	}
+	
+	/**
+	 * Helper function which returns the recipes containing all of the specified search words.
+	 * @param searchWordSet the analyzed search words.
+	 * @param fuzzy true to match a search word without recipes to the closest index terms instead.
+	 * @return the PostingList of matching recipeId's, null if no recipe matches.
+	 */
+	private PostingList match(Set<String> searchWordSet, boolean fuzzy) {
+		// get the PostingLists of all words, a word without recipes matches nothing
+		List<PostingList> wordLists = new ArrayList<PostingList>(searchWordSet.size());
+		for (String s : searchWordSet) {
+			// get all recipes containing the current word in the name or ingredient list
+			PostingList postings = indexMap.get(s);
+			if (postings == null && fuzzy)
+				postings = fuzzyPostings(s);
+			if (postings == null)
+				return null;
 			
-			// add to Set of matches
-			for (Map.Entry<Integer, Integer> entry : hitTable.entrySet()) {
-				if (entry.getValue() == numMatchesRequired)
-					resultSet.add(entry.getKey());
+			wordLists.add(postings);
+		}
+		
+		if (wordLists.isEmpty())
+			return null;
+		
+		// intersect from the rarest word upwards, so every intermediate result is as small as possible, and stop once nothing is left
+		Collections.sort(wordLists, PostingList.BY_SIZE);
+		PostingList result = wordLists.get(0);
+		for (int i = 1; i < wordLists.size() && !result.isEmpty(); i++)
+			result = result.intersect(wordLists.get(i));
+		
+		return result.isEmpty() ? null : result;
+	}
+	
+	/**
+	 * Helper function which returns the recipes of the index terms closest to a misspelled search term.
+	 * Only the terms at the smallest edit distance found are used, and short terms tolerate fewer edits, as nearly every short word is within two edits of some index term.
+	 * @param word the search term.
+	 * @return the union of the PostingLists of the closest index terms, null if there are none.
+	 */
+	private PostingList fuzzyPostings(String word) {
+		int maxDistance = (word.length() < MIN_FUZZY_LENGTH) ? 0 : (word.length() < MIN_FUZZY_LENGTH_TWO_EDITS) ? 1 : 2;
+		
+		PostingList result = null;
+		for (int distance = 1; distance <= maxDistance && result == null; distance++) {
+			for (String term : dictionary().fuzzy(word, distance, MAX_FUZZY_TERMS)) {
+				PostingList postings = indexMap.get(term);
+				result = (result == null) ? postings : result.union(postings);
 			}
 		}
 		
-		// convert Set of recipeId's to List of sorted Recipes and return
-		return getRecipesById(resultSet);
+		return result;
+	}
+	
+	/**
+	 * Helper function which derives the warm-start snapshot key of a recipe pack.
+	 * The key covers the pack contents, the recipeId range it was loaded into, the meat keywords used to screen for vegetarian recipes and the text analysis producing the index terms, the inputs of the built state.
+	 * @param buffer the pack contents.
+	 * @param packId the unique identifier of the pack.
+	 * @return the snapshot key.
+	 */
+	private static long snapshotKey(ByteBuffer buffer, int packId) {
+		return ((RecipePack.checksum(buffer) * 31 + packId) * 31 + meats.hashCode()) * 31 + TextAnalyzer.VERSION;
 	}
 	
 	/**
@@ -693,13 +1825,28 @@ public final class RecipeDatabase {
 		return result;
 	}
 	
+	/**
+	 * Helper function which unlocks the Recipes of a replaced pack again that were unlocked before it was replaced, as far as they are still loaded.
+	 * @param recipeIds the recipeId's that were unlocked.
+	 */
+	private void unlockAgain(RecipeBitSet recipeIds) {
+		boolean changed = false;
+		for (int recipeId : recipeIds.toArray()) {
+			if (recipeStore.get(recipeId) != null)
+				changed |= unlockedRecipes.set(recipeId);
+		}
+		
+		if (changed)
+			queryCache.invalidate();
+	}
+	
 	/**
 	 * Unlocks all Recipes that apply to the specified Box.
 	 * @param boxId the unique identifier for the Box whose recipes are to be unlocked.
 	 * @return a Set of recipeId's whose Recipes have been newly unlocked, excluding Recipes already unlocked.
 	 */
 	public Set<Integer> unlockRecipesByBox(short boxId) {
-		Set<Integer> unlockedRecipes = new HashSet<Integer>();
+		Set<Integer> result = new HashSet<Integer>();
 		
 		// retrieve the Set of Recipes unlocked by this Box
 		Set<Integer> recipeSet = boxMap.get(boxId);
@@ -707,15 +1854,97 @@ public final class RecipeDatabase {
 		// unlock Recipes, counting only the ones not already unlocked
 		if (recipeSet != null) {
 			for (int recipeId : recipeSet) {
-				Recipe recipe = findRecipeById(recipeId);
-				if (!recipe.unlocked) {
-					recipe.unlocked = true;
-					unlockedRecipes.add(recipeId);
-				}
+				if (unlockedRecipes.set(recipeId))
+					result.add(recipeId);
+			}
+		}
+		
+		if (!result.isEmpty())
+			queryCache.invalidate();
+		
+		return result;
+	}
+	
+	/**
+	 * Removes all Recipes of a pack from the database, leaving the Recipes and index entries of other packs untouched.
+	 * Favorites and shopping list entries of the pack are kept, and apply again when the pack is loaded again.
+	 * @param packId the unique identifier of the pack to unload.
+	 * @return true if the pack was loaded, false otherwise.
+	 */
+	public boolean unloadRecipePack(int packId) {
+		List<Recipe> recipes = recipeStore.removePack(packId);
+		if (recipes == null)
+			return false;
+		
+		recipeColumns.removePack(packId);
+		
+		// unlocked Recipes are always loaded, loadRecipePack() carries the unlock progress of a replaced pack over
+		unlockedRecipes.clearPack(packId);
+		vegetarianRecipes.clearPack(packId);
+		
+		// UNINDEX RECIPE NAMES AND INGREDIENT NAMES, the pack owns its whole recipeId range
+		int firstRecipeId = packId << PACK_ID_SHIFT;
+		int lastRecipeId = firstRecipeId + (1 << PACK_ID_SHIFT) - 1;
+		removePostings(indexMap, firstRecipeId, lastRecipeId);
+		removePostings(nameIndexMap, firstRecipeId, lastRecipeId);
+		removePostings(repeatedIndexMap, firstRecipeId, lastRecipeId);
+		
+		for (Recipe recipe : recipes) {
+			int recipeId = recipe.recipeId;
+			
+			// UNINDEX BOXES
+			for (short boxId : recipe.boxes) {
+				Set<Integer> set = boxMap.get(boxId);
+				if (set == null)
+					continue;
+				
+				set.remove(recipeId);
+				if (set.isEmpty())
+					boxMap.remove(boxId);
 			}
 		}
 		
-		return unlockedRecipes;
+		// compress PostingLists still being built when a failed load is undone, rank the remaining Recipes
+		recipesChanged();
+		finishLoading();
+		
+		return true;
+	}
+	
+	/**
+	 * Returns search suggestions completing the last word of a partially typed search, for search-as-you-type.
+	 * The last word is completed with the most frequent search words starting with it, without running a search.
+	 * The last word is normalized like the index terms first, so an inflected prefix such as "apples" completes to the terms indexed for it.
+	 * Safe to call from any thread: it only reads the term dictionary published once loading has finished, and suggests nothing while Recipes are being loaded or unloaded.
+	 * @param query the partially typed search.
+	 * @param limit the largest number of suggestions.
+	 * @return the suggested searches, most frequent completion first; empty if the last word is incomplete, nothing matches or loading has not finished.
+	 */
+	public List<String> suggestSearches(String query, int limit) {
+		List<String> result = new ArrayList<String>();
+		if (query == null)
+			return result;
+		
+		// the preceding words and query operators are kept as typed, so an OR stays an operator, only the last run of letters is completed
+		int start = query.length();
+		while (start > 0 && Character.isLetter(query.charAt(start - 1)))
+			start--;
+		
+		if (start == query.length())
+			return result;
+		
+		// built by finishLoading(), null while Recipes are being added or removed
+		TermDictionary dictionary = termDictionary;
+		if (dictionary == null)
+			return result;
+		
+		String prefix = TextAnalyzer.normalize(query.substring(start));
+		
+		String head = query.substring(0, start);
+		for (String term : dictionary.complete(prefix, limit))
+			result.add(head + term);
+		
+		return result;
 	}
 	
 	/**
@@ -724,9 +1953,32 @@ public final class RecipeDatabase {
 	 * @param quantity the new quantity of the Recipe to be saved to the shopping list.
 	 */
 	public void updateQuantity(int recipeId, byte quantity) {
-		if (quantity == 0)
-			shoppingListRecipes.remove(recipeId);
-		else
-			shoppingListRecipes.put(recipeId, quantity);
+		if (quantity == 0) {
+			shoppingListRecipes.clear(recipeId);
+			shoppingListQuantities.remove(recipeId);
+		} else {
+			shoppingListRecipes.set(recipeId);
+			shoppingListQuantities.put(recipeId, quantity);
+		}
+		
+		queryCache.invalidate();
+	}
+	
+	/**
+	 * Runs the listener on the UI thread once the database is loaded, starting the load if necessary.
+	 * Runs the listener immediately if the database is already loaded; call from the UI thread.
+	 * @param listener the listener to run, typically rendering the data of the calling Activity.
+	 */
+	public void whenReady(Runnable listener) {
+		loadAsync();
+		
+		synchronized (this) {
+			if (readyListeners != null) {
+				readyListeners.add(listener);
+				return;
+			}
+		}
+		
+		listener.run();
 	}
 }
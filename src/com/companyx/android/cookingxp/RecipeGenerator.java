@@ -0,0 +1,309 @@
+package com.companyx.android.cookingxp;
+
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Recipe Generator
+ *
+ * Writes synthetic recipe data files in the raw "0:E" record format read by RecipeLoader, for load testing beyond the shipped recipes:
+ * java com.companyx.android.cookingxp.RecipeGenerator 100000 recipes_100k.txt
+ *
+ * The shape of the output follows res/raw/master_recipe_data.txt: most Recipes belong to one Box, have around 7 ingredients and around 9 directions.
+ * Ingredient names follow a Zipf distribution over a vocabulary of staples, produce, meats and seafood plus a long tail of qualified names such as "smoked paprika",
+ * so the search index sees a few very common terms and many rare ones. Box popularity is skewed the same way.
+ * Output is UTF-8 and deterministic for a given seed.
+ *
+ * @author James Chin <jameslchin@gmail.com>
+ */
+final class RecipeGenerator {
+	// CONSTANTS
+	static final long DEFAULT_SEED = 42;
+	static final int MIN_BOXES = 20; // number of Boxes in the shipped game
+	static final int RECIPES_PER_BOX = 50; // larger corpora spread over more Boxes
+	private static final double ZIPF_EXPONENT = 1.0;
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	// VOCABULARY, ordered from most to least common
+	static final String[] MEATS = {"chicken", "beef", "bacon", "pork", "ham", "turkey", "steak", "duck", "eel"};
+	private static final String[] STAPLES = {"salt", "pepper", "butter", "olive oil", "garlic", "onion", "sugar", "flour", "eggs", "milk", "water", "lemon juice", "vegetable oil", "brown sugar", "baking powder", "vanilla extract", "soy sauce", "parsley", "cheese", "bread crumbs"};
+	private static final String[] PRODUCE = {"tomatoes", "potatoes", "carrots", "celery", "spinach", "lettuce", "cabbage", "cucumbers", "peas", "apples", "bananas", "avocados", "eggplants", "mushrooms", "bell peppers", "zucchini", "broccoli", "corn", "green beans", "lemons"};
+	private static final String[] SEAFOOD = {"salmon", "tuna", "shrimp", "crab", "clam", "tilapia", "lobster", "oyster", "herring", "carp", "fish"};
+	private static final String[] SPICES = {"paprika", "cumin", "oregano", "basil", "thyme", "rosemary", "cinnamon", "nutmeg", "ginger", "chili powder", "cayenne", "dill", "sage", "cilantro", "bay leaves", "fennel"};
+	private static final String[] QUALIFIERS = {"fresh", "dried", "ground", "smoked", "chopped", "minced", "sliced", "grated", "roasted", "frozen", "canned", "unsalted", "organic", "shredded", "toasted", "crushed"};
+
+	// RECORD PARTS
+	private static final String[] AUTHORS = {"Cooking XP", "Grandma", "Chef Ana", "Uncle Bob", "Test Kitchen", "Community"};
+	private static final String[] METHODS = {"Pan Fried", "Oven Roasted", "Grilled", "Slow Cooked", "Stove Top", "Baked", "Braised", "Stir Fried", "Poached", "Smoked"};
+	private static final String[] STYLES = {"Classic", "Spicy", "Garlic", "Honey Glazed", "Lemon", "Herb Crusted", "Creamy", "Rustic", "Easy", "Weeknight"};
+	private static final String[] AMOUNTS = {"1", "2", "1/2", "1 1/2", "3", "1/4", "4", "3/4", " ", ""};
+	private static final String[] MEASUREMENTS = {"cup", "cups", "teaspoon", "tablespoons", "pound", "pounds", "lbs", "ounces", "slices", "cloves", "pinch", "package", " ", ""};
+	private static final String[] NOTES = {"Freshly ground", "or to taste", "finely chopped", "at room temperature", "divided", "optional", "any kind will do"};
+	private static final String[] DIRECTIONS = {
+		"Preheat the oven to %d\u00b0F (%d\u00b0C).",
+		"Season the %s with salt and pepper.",
+		"Heat a skillet over medium-high heat and add the %s.",
+		"Stir in the %s and cook for %d minutes, stirring occasionally.",
+		"Combine the %s and the %s in a large bowl.",
+		"Transfer to a baking dish and bake for %d minutes.",
+		"Let rest for %d minutes before serving.",
+		"Garnish with %s and serve warm."
+	};
+
+	// STATE VARIABLES
+	private final Random random;
+	private final String[] vocabulary; // ingredient names, most common first
+	private final double[] ingredientWeights; // cumulative Zipf weights over the vocabulary
+	private final double[] boxWeights; // cumulative Zipf weights over the Boxes
+	private final double[] authorWeights; // cumulative Zipf weights over the authors
+	private final StringBuilder line = new StringBuilder(512);
+
+	/**
+	 * Creates a generator for a corpus of the specified size.
+	 * @param recipeCount the number of Recipes to generate, used to scale the number of Boxes.
+	 * @param seed the random seed.
+	 */
+	RecipeGenerator(int recipeCount, long seed) {
+		random = new Random(seed);
+		vocabulary = buildVocabulary();
+		ingredientWeights = zipf(vocabulary.length);
+		boxWeights = zipf(Math.min(Short.MAX_VALUE + 1, Math.max(MIN_BOXES, recipeCount / RECIPES_PER_BOX))); // boxIds are shorts
+		authorWeights = zipf(AUTHORS.length);
+	}
+
+	/**
+	 * Command line entry point, writes a synthetic recipe data file.
+	 * @param args the number of Recipes and the destination file, optionally followed by the random seed.
+	 * @throws IOException if the destination cannot be written.
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2 || args.length > 3) {
+			System.err.println("usage: RecipeGenerator <recipeCount> <output.txt> [seed]");
+			System.exit(1);
+		}
+
+		int recipeCount = Integer.parseInt(args[0]);
+		long seed = (args.length == 3) ? Long.parseLong(args[2]) : DEFAULT_SEED;
+
+		OutputStream out = new FileOutputStream(args[1]);
+		try {
+			write(recipeCount, seed, out);
+		} finally {
+			out.close();
+		}
+
+		System.out.println("Generated " + recipeCount + " recipes into " + args[1]);
+	}
+
+	/**
+	 * Writes a synthetic recipe data file.
+	 * @param recipeCount the number of Recipes to write.
+	 * @param seed the random seed.
+	 * @param out the destination, left open.
+	 * @throws IOException if the destination cannot be written.
+	 */
+	static void write(int recipeCount, long seed, OutputStream out) throws IOException {
+		RecipeGenerator generator = new RecipeGenerator(recipeCount, seed);
+		Writer writer = new BufferedWriter(new OutputStreamWriter(out, UTF_8), 64 * 1024);
+
+		for (int i = 0; i < recipeCount; i++)
+			generator.writeRecipe(writer);
+
+		writer.flush();
+	}
+
+	/**
+	 * Writes one Recipe record.
+	 * @param writer the destination.
+	 * @throws IOException if the destination cannot be written.
+	 */
+	void writeRecipe(Writer writer) throws IOException {
+		String mainIngredient = ingredient();
+
+		writer.write(RecipeLoader.RECORD_MARKER);
+		writer.write('\n');
+
+		// TITLE:AUTHOR:BOXES, 85% of Recipes in one Box, the rest in two or three
+		line.setLength(0);
+		line.append(pick(METHODS)).append(' ').append(pick(STYLES)).append(' ').append(capitalize(mainIngredient));
+		line.append(':').append(AUTHORS[sample(authorWeights)]);
+		int numOfBoxes = (random.nextInt(100) < 85) ? 1 : 2 + random.nextInt(2);
+		for (int i = 0; i < numOfBoxes; i++)
+			line.append(':').append(sample(boxWeights));
+		writeLine(writer);
+
+		// PREP:INACTIVE:COOK:SERVINGS, most Recipes have no inactive time
+		line.setLength(0);
+		line.append(5 * (1 + random.nextInt(12))).append(':');
+		line.append((random.nextInt(100) < 80) ? 0 : 10 * (1 + random.nextInt(48))).append(':');
+		line.append(5 * random.nextInt(49)).append(':');
+		line.append(1 + random.nextInt(12));
+		writeLine(writer);
+
+		// INGREDIENTS, the main ingredient first
+		int numOfIngredients = gaussian(7, 3.5, 1, 20);
+		for (int i = 0; i < numOfIngredients; i++) {
+			line.setLength(0);
+			line.append(pick(AMOUNTS)).append(':').append(pick(MEASUREMENTS)).append(':');
+			line.append((i == 0) ? mainIngredient : ingredient()).append(':');
+			line.append((random.nextInt(100) < 60) ? " " : pick(NOTES));
+			writeLine(writer);
+		}
+
+		// DIRECTIONS
+		int numOfDirections = gaussian(9, 4, 1, 19);
+		line.setLength(0);
+		line.append('_');
+		for (int i = 0; i < numOfDirections; i++) {
+			if (i > 0)
+				line.append(':');
+			line.append(direction(mainIngredient));
+		}
+		writeLine(writer);
+	}
+
+	/**
+	 * Helper function which returns one direction sentence.
+	 * @param mainIngredient the main ingredient of the Recipe.
+	 * @return the direction.
+	 */
+	private String direction(String mainIngredient) {
+		int template = random.nextInt(DIRECTIONS.length);
+		String format = DIRECTIONS[template];
+
+		switch (template) {
+		case 0:
+			int fahrenheit = 325 + 25 * random.nextInt(6);
+			return String.format(Locale.US, format, fahrenheit, (fahrenheit - 32) * 5 / 9);
+		case 3:
+			return String.format(Locale.US, format, ingredient(), 2 + random.nextInt(14));
+		case 4:
+			return String.format(Locale.US, format, mainIngredient, ingredient());
+		case 5:
+		case 6:
+			return String.format(Locale.US, format, 5 + random.nextInt(56));
+		default:
+			return String.format(Locale.US, format, (template == 7) ? ingredient() : mainIngredient);
+		}
+	}
+
+	/**
+	 * Helper function which returns a random ingredient name, common names more likely.
+	 * @return the ingredient name.
+	 */
+	private String ingredient() {
+		return vocabulary[sample(ingredientWeights)];
+	}
+
+	/**
+	 * Helper function which returns a normally distributed integer, clamped to a range.
+	 * @param mean the mean.
+	 * @param deviation the standard deviation.
+	 * @param min the smallest value returned.
+	 * @param max the largest value returned.
+	 * @return the random integer.
+	 */
+	private int gaussian(double mean, double deviation, int min, int max) {
+		int result = (int) Math.round(mean + random.nextGaussian() * deviation);
+
+		return Math.max(min, Math.min(max, result));
+	}
+
+	/**
+	 * Helper function which returns a uniformly chosen element.
+	 * @param values the values to choose from.
+	 * @return the chosen value.
+	 */
+	private String pick(String[] values) {
+		return values[random.nextInt(values.length)];
+	}
+
+	/**
+	 * Helper function which samples an index from cumulative weights.
+	 * @param cumulative the cumulative weights, ending at 1.
+	 * @return the sampled index.
+	 */
+	private int sample(double[] cumulative) {
+		int index = Arrays.binarySearch(cumulative, random.nextDouble());
+
+		return Math.min((index < 0) ? -index - 1 : index, cumulative.length - 1);
+	}
+
+	/**
+	 * Helper function which writes the line under construction followed by a line break.
+	 * @param writer the destination.
+	 * @throws IOException if the destination cannot be written.
+	 */
+	private void writeLine(Writer writer) throws IOException {
+		line.append('\n');
+		writer.append(line);
+	}
+
+	/**
+	 * Returns the ingredient vocabulary, most common names first: staples, produce, meats, seafood and spices, then every qualified name.
+	 * @return the ingredient vocabulary.
+	 */
+	private static String[] buildVocabulary() {
+		String[][] groups = {STAPLES, PRODUCE, MEATS, SEAFOOD, SPICES};
+
+		int size = 0;
+		for (String[] group : groups)
+			size += group.length;
+
+		String[] result = new String[size * (1 + QUALIFIERS.length)];
+		int i = 0;
+		for (String[] group : groups) {
+			for (String name : group)
+				result[i++] = name;
+		}
+		for (String qualifier : QUALIFIERS) {
+			for (String[] group : groups) {
+				for (String name : group)
+					result[i++] = qualifier + " " + name;
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Helper function which capitalizes the first letter of every word.
+	 * @param string the String to capitalize.
+	 * @return the capitalized String.
+	 */
+	private static String capitalize(String string) {
+		char[] chars = string.toCharArray();
+		for (int i = 0; i < chars.length; i++) {
+			if (i == 0 || chars[i - 1] == ' ')
+				chars[i] = Character.toUpperCase(chars[i]);
+		}
+
+		return new String(chars);
+	}
+
+	/**
+	 * Returns the cumulative Zipf weights of the specified number of ranks.
+	 * @param size the number of ranks.
+	 * @return the cumulative weights, ending at 1.
+	 */
+	private static double[] zipf(int size) {
+		double[] result = new double[size];
+		double sum = 0;
+		for (int i = 0; i < size; i++) {
+			sum += 1 / Math.pow(i + 1, ZIPF_EXPONENT);
+			result[i] = sum;
+		}
+		for (int i = 0; i < size; i++)
+			result[i] /= sum;
+
+		return result;
+	}
+}
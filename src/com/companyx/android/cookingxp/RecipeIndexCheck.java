@@ -0,0 +1,451 @@
+package com.companyx.android.cookingxp;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeSet;
+
+import com.companyx.android.cookingxp.RecipeDatabase.Recipe;
+
+/**
+ * Recipe Index Check
+ *
+ * Checks the compressed search index structures against brute-force implementations on random inputs, for use after changing them:
+ * java com.companyx.android.cookingxp.RecipeIndexCheck [rounds] [seed] (defaults to 200 rounds, seed 42)
+ *
+ * CHECKS PER ROUND:
+ * posting lists: PostingList against a TreeSet of the same recipeId's, for sparse, dense and multi-chunk lists built from unordered appends with duplicates;
+ *   size and toArray frozen and thawed, intersect, union, subtract, remove, removeRange and the write/read round trip
+ * completion: TermDictionary.complete() against filtering all terms by the prefix and sorting them by frequency
+ * fuzzy matching: TermDictionary.fuzzy() against the edit distance to every term, sorted by distance and frequency
+ * ranking: RecipeDatabase.searchRankedRecipes() against the head of the complete ranking, and the complete ranking against searchRecipes()
+ *
+ * Prints one line per check with the number of failed cases, and the first failures; exits with status 1 if any case failed.
+ *
+ * @author James Chin <jameslchin@gmail.com>
+ */
+final class RecipeIndexCheck {
+	// CONSTANTS
+	static final int DEFAULT_ROUNDS = 200;
+	static final long DEFAULT_SEED = 42;
+	private static final int CHUNK_SIZE = 1 << 16; // recipeId's per PostingList chunk
+	private static final int MAX_REPORTED = 3; // failures printed per check
+	private static final int DICTIONARY_TERMS = 2000;
+	private static final String TERM_LETTERS = "abcde"; // few letters, so terms share prefixes and lie within small edit distances
+	private static final int RANKING_RECIPES = 5000;
+	private static final String[] RANKING_QUERIES = {"salt", "chicken", "garlic onion", "smoked paprika", "fresh", "beef steak", "eggs milk flour", "salmon"};
+
+	/**
+	 * Failed cases of one check.
+	 */
+	private static final class Failures {
+		final String check;
+		int cases;
+		int failed;
+
+		Failures(String check) {
+			this.check = check;
+		}
+
+		/**
+		 * Records the outcome of one case, printing the first failures.
+		 * @param ok true if the case passed.
+		 * @param description what was checked, printed if the case failed.
+		 */
+		void expect(boolean ok, String description) {
+			cases++;
+			if (ok)
+				return;
+
+			failed++;
+			if (failed <= MAX_REPORTED)
+				System.out.println("FAILED " + check + ": " + description);
+		}
+
+		/**
+		 * Prints the summary line.
+		 */
+		void report() {
+			System.out.println(String.format(Locale.US, "%-16s %7d cases %5d failed", check, cases, failed));
+		}
+	}
+
+	/**
+	 * Private constructor, static utility class.
+	 */
+	private RecipeIndexCheck() {
+	}
+
+	/**
+	 * Command line entry point, runs every check and prints one line per check.
+	 * @param args the number of rounds and the random seed, default to DEFAULT_ROUNDS and DEFAULT_SEED.
+	 * @throws IOException if a PostingList cannot be written or the ranking corpus cannot be read.
+	 */
+	public static void main(String[] args) throws IOException {
+		int rounds = (args.length > 0) ? Integer.parseInt(args[0]) : DEFAULT_ROUNDS;
+		long seed = (args.length > 1) ? Long.parseLong(args[1]) : DEFAULT_SEED;
+		Random random = new Random(seed);
+
+		Failures postings = new Failures("posting lists");
+		Failures completion = new Failures("completion");
+		Failures fuzzy = new Failures("fuzzy matching");
+		Failures ranking = new Failures("ranking");
+
+		for (int round = 0; round < rounds; round++)
+			checkPostingLists(random, round, postings);
+
+		TermDictionary dictionary = randomDictionary(random);
+		for (int round = 0; round < rounds; round++) {
+			checkCompletion(dictionary, randomTerm(random, random.nextInt(4)), 1 + random.nextInt(10), completion);
+			checkFuzzy(dictionary, randomTerm(random, 2 + random.nextInt(6)), 1 + random.nextInt(2), 1 + random.nextInt(20), fuzzy);
+		}
+
+		checkRanking(seed, ranking);
+
+		int failed = 0;
+		for (Failures failures : new Failures[] {postings, completion, fuzzy, ranking}) {
+			failures.report();
+			failed += failures.failed;
+		}
+
+		if (failed > 0)
+			System.exit(1);
+	}
+
+	/**
+	 * Helper function which checks two random PostingLists and the operations combining them against TreeSets.
+	 * Rounds cycle through sparse lists, dense lists within a few chunks, and lists spanning many chunks of which some are dense.
+	 * @param random the source of randomness.
+	 * @param round the round number, selecting the shape of the lists.
+	 * @param failures the failures of the check.
+	 * @throws IOException if a PostingList cannot be written.
+	 */
+	private static void checkPostingLists(Random random, int round, Failures failures) throws IOException {
+		TreeSet<Integer> a = new TreeSet<Integer>();
+		TreeSet<Integer> b = new TreeSet<Integer>();
+		PostingList listA = randomPostingList(random, round % 3, a);
+		PostingList listB = randomPostingList(random, (round / 3) % 3, b);
+		String shape = "round " + round;
+
+		// BUILD, thawed and frozen
+		failures.expect(equal(listA, a), shape + " thawed list");
+		listA.freeze();
+		listB.freeze();
+		failures.expect(equal(listA, a) && equal(listB, b), shape + " frozen list");
+
+		// COMBINE
+		TreeSet<Integer> expected = new TreeSet<Integer>(a);
+		expected.retainAll(b);
+		failures.expect(equal(listA.intersect(listB), expected), shape + " intersect");
+
+		expected = new TreeSet<Integer>(a);
+		expected.addAll(b);
+		failures.expect(equal(listA.union(listB), expected), shape + " union");
+
+		expected = new TreeSet<Integer>(a);
+		expected.removeAll(b);
+		failures.expect(equal(listA.subtract(listB), expected), shape + " subtract");
+
+		// SERIALIZE
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		listA.write(out);
+		out.flush();
+		ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+		PostingList read = PostingList.read(buffer);
+		failures.expect(equal(read, a) && !buffer.hasRemaining(), shape + " write/read");
+		failures.expect(equal(read.intersect(listB), listA.intersect(listB)), shape + " intersect after read");
+
+		// REMOVE, a single recipeId from a frozen list and a range from a frozen and a thawed one
+		if (!a.isEmpty()) {
+			int recipeId = (random.nextBoolean()) ? a.first() : a.last();
+			boolean removed = listA.remove(recipeId);
+			a.remove(recipeId);
+			failures.expect(removed && equal(listA, a) && !listA.remove(recipeId), shape + " remove " + recipeId);
+		}
+
+		// range ends on, just below or away from listed recipeId's
+		int[] recipeIds = listB.toArray();
+		int first = (recipeIds.length == 0 || random.nextBoolean()) ? random.nextInt(1 << 22) : recipeIds[random.nextInt(recipeIds.length)] - random.nextInt(2);
+		int last = (recipeIds.length == 0 || random.nextBoolean()) ? first + random.nextInt(1 << 21) : recipeIds[random.nextInt(recipeIds.length)] - random.nextInt(2);
+		if (random.nextInt(4) == 0)
+			last = Integer.MAX_VALUE;
+		if (last < first) {
+			int swap = first;
+			first = last;
+			last = swap;
+		}
+		first = Math.max(first, 0);
+
+		for (PostingList list : new PostingList[] {listB, copyThawed(b)}) {
+			TreeSet<Integer> remaining = new TreeSet<Integer>();
+			boolean listed = false;
+			for (int recipeId : b) {
+				if (recipeId >= first && recipeId <= last)
+					listed = true;
+				else
+					remaining.add(recipeId);
+			}
+			failures.expect(list.removeRange(first, last) == listed && equal(list, remaining), shape + " removeRange " + first + ".." + last);
+		}
+	}
+
+	/**
+	 * Helper function which checks the completions of a prefix against all terms starting with it, most frequent first and alphabetical among equally frequent terms.
+	 * @param dictionary the dictionary.
+	 * @param prefix the prefix.
+	 * @param limit the largest number of completions.
+	 * @param failures the failures of the check.
+	 */
+	private static void checkCompletion(final TermDictionary dictionary, String prefix, int limit, Failures failures) {
+		List<String> expected = new ArrayList<String>();
+		for (String term : dictionary.terms()) {
+			if (term.startsWith(prefix))
+				expected.add(term);
+		}
+
+		Collections.sort(expected, new Comparator<String>() {
+			@Override
+			public int compare(String a, String b) {
+				int frequencyA = dictionary.documentFrequency(a);
+				int frequencyB = dictionary.documentFrequency(b);
+				if (frequencyA != frequencyB)
+					return (frequencyA > frequencyB) ? -1 : 1;
+
+				return a.compareTo(b);
+			}
+		});
+
+		List<String> completions = dictionary.complete(prefix, limit);
+		failures.expect(completions.equals(expected.subList(0, Math.min(limit, expected.size()))), "'" + prefix + "' limit " + limit + " got " + completions);
+	}
+
+	/**
+	 * Helper function which checks the fuzzy matches of a word against the edit distance to every term, closest first, then most frequent first and alphabetical.
+	 * @param dictionary the dictionary.
+	 * @param word the word.
+	 * @param maxDistance the largest edit distance.
+	 * @param limit the largest number of matches.
+	 * @param failures the failures of the check.
+	 */
+	private static void checkFuzzy(final TermDictionary dictionary, String word, int maxDistance, int limit, Failures failures) {
+		final Map<String, Integer> distances = new HashMap<String, Integer>();
+		for (String term : dictionary.terms()) {
+			int distance = editDistance(word, term);
+			if (distance <= maxDistance)
+				distances.put(term, distance);
+		}
+
+		List<String> expected = new ArrayList<String>(distances.keySet());
+		Collections.sort(expected, new Comparator<String>() {
+			@Override
+			public int compare(String a, String b) {
+				int distanceA = distances.get(a);
+				int distanceB = distances.get(b);
+				if (distanceA != distanceB)
+					return distanceA - distanceB;
+
+				int frequencyA = dictionary.documentFrequency(a);
+				int frequencyB = dictionary.documentFrequency(b);
+				if (frequencyA != frequencyB)
+					return (frequencyA > frequencyB) ? -1 : 1;
+
+				return a.compareTo(b);
+			}
+		});
+
+		List<String> matches = dictionary.fuzzy(word, maxDistance, limit);
+		failures.expect(matches.equals(expected.subList(0, Math.min(limit, expected.size()))), "'" + word + "' distance " + maxDistance + " limit " + limit + " got " + matches);
+	}
+
+	/**
+	 * Helper function which checks that the best ranked Recipes of a search are the head of its complete ranking, and that the complete ranking holds exactly the Recipes found by searchRecipes().
+	 * @param seed the seed of the generated corpus.
+	 * @param failures the failures of the check.
+	 * @throws IOException if the generated corpus cannot be read.
+	 */
+	private static void checkRanking(long seed, Failures failures) throws IOException {
+		ByteArrayOutputStream corpus = new ByteArrayOutputStream();
+		RecipeGenerator.write(RANKING_RECIPES, seed, corpus);
+
+		RecipeDatabase recipeDatabase = new RecipeDatabase(new HashSet<String>(Arrays.asList(RecipeGenerator.MEATS)));
+		for (Recipe recipe : new RecipeLoader(new ByteArrayInputStream(corpus.toByteArray()), null).parseRecipes())
+			recipeDatabase.addRecipe(recipe);
+		for (short boxId = 0; boxId < RANKING_RECIPES / RecipeGenerator.RECIPES_PER_BOX; boxId += 2)
+			recipeDatabase.unlockRecipesByBox(boxId);
+		recipeDatabase.finishLoading();
+
+		for (String query : RANKING_QUERIES) {
+			List<Recipe> all = recipeDatabase.searchRankedRecipes(query, Integer.MAX_VALUE);
+			failures.expect(new HashSet<Recipe>(all).equals(new HashSet<Recipe>(recipeDatabase.searchRecipes(query))) && all.size() == new HashSet<Recipe>(all).size(), "'" + query + "' matches");
+
+			for (int limit : new int[] {1, 5, 20, 100}) {
+				List<Recipe> best = recipeDatabase.searchRankedRecipes(query, limit);
+				failures.expect(best.equals(all.subList(0, Math.min(limit, all.size()))), "'" + query + "' limit " + limit);
+			}
+		}
+	}
+
+	/**
+	 * Helper function which returns a thawed PostingList of recipeId's, appended in random order with duplicates.
+	 * @param recipeIds the recipeId's.
+	 * @return the PostingList, not frozen.
+	 */
+	private static PostingList copyThawed(TreeSet<Integer> recipeIds) {
+		List<Integer> shuffled = new ArrayList<Integer>(recipeIds);
+		Collections.shuffle(shuffled, new Random(recipeIds.size()));
+
+		PostingList result = new PostingList();
+		for (int recipeId : shuffled) {
+			result.add(recipeId);
+			result.add(recipeId);
+		}
+
+		return result;
+	}
+
+	/**
+	 * Helper function which returns the edit distance of two Strings, counting inserted, deleted and substituted characters.
+	 * @param a one String.
+	 * @param b the other String.
+	 * @return the edit distance.
+	 */
+	private static int editDistance(String a, String b) {
+		int[][] table = new int[a.length() + 1][b.length() + 1];
+		for (int i = 0; i <= a.length(); i++)
+			table[i][0] = i;
+		for (int j = 0; j <= b.length(); j++)
+			table[0][j] = j;
+
+		for (int i = 1; i <= a.length(); i++) {
+			for (int j = 1; j <= b.length(); j++) {
+				int cost = (a.charAt(i - 1) == b.charAt(j - 1)) ? 0 : 1;
+				table[i][j] = Math.min(Math.min(table[i - 1][j] + 1, table[i][j - 1] + 1), table[i - 1][j - 1] + cost);
+			}
+		}
+
+		return table[a.length()][b.length()];
+	}
+
+	/**
+	 * Helper function which compares a PostingList with a TreeSet.
+	 * @param list the PostingList.
+	 * @param expected the recipeId's the list should hold.
+	 * @return true if the list holds exactly the expected recipeId's.
+	 */
+	private static boolean equal(PostingList list, TreeSet<Integer> expected) {
+		int[] recipeIds = list.toArray();
+		if (recipeIds.length != expected.size() || list.size() != expected.size() || list.isEmpty() != expected.isEmpty())
+			return false;
+
+		Iterator<Integer> iterator = expected.iterator();
+		for (int recipeId : recipeIds) {
+			if (recipeId != iterator.next())
+				return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Helper function which compares two PostingLists.
+	 * @param list one PostingList.
+	 * @param other the other PostingList.
+	 * @return true if both lists hold the same recipeId's.
+	 */
+	private static boolean equal(PostingList list, PostingList other) {
+		return Arrays.equals(list.toArray(), other.toArray());
+	}
+
+	/**
+	 * Helper function which builds a dictionary of random terms with random document frequencies, many of them equal.
+	 * @param random the source of randomness.
+	 * @return the dictionary.
+	 */
+	private static TermDictionary randomDictionary(Random random) {
+		Map<String, PostingList> indexMap = new HashMap<String, PostingList>();
+		for (int i = 0; i < DICTIONARY_TERMS; i++) {
+			String term = randomTerm(random, 2 + random.nextInt(7));
+			if (indexMap.containsKey(term))
+				continue;
+
+			PostingList postings = new PostingList();
+			int frequency = 1 + random.nextInt(1 + random.nextInt(20));
+			for (int recipeId = 0; recipeId < frequency; recipeId++)
+				postings.add(recipeId);
+			postings.freeze();
+			indexMap.put(term, postings);
+		}
+
+		return new TermDictionary(indexMap);
+	}
+
+	/**
+	 * Helper function which builds a random PostingList and the TreeSet of its recipeId's.
+	 * @param random the source of randomness.
+	 * @param shape 0 for a sparse list, 1 for a dense list within a few chunks, 2 for a list spanning many chunks with some dense ones.
+	 * @param recipeIds the TreeSet to add the recipeId's to.
+	 * @return the PostingList, not frozen, built from unordered appends with duplicates.
+	 */
+	private static PostingList randomPostingList(Random random, int shape, TreeSet<Integer> recipeIds) {
+		PostingList result = new PostingList();
+		List<Integer> appended = new ArrayList<Integer>();
+
+		if (shape == 0) {
+			int count = random.nextInt(2000);
+			for (int i = 0; i < count; i++)
+				appended.add(random.nextInt(1 << 22));
+		} else if (shape == 1) {
+			int base = random.nextInt(8) * CHUNK_SIZE;
+			int count = PostingList.DENSE_CARDINALITY + random.nextInt(4 * CHUNK_SIZE);
+			for (int i = 0; i < count; i++)
+				appended.add(base + random.nextInt(3 * CHUNK_SIZE));
+		} else {
+			for (int chunk = 0; chunk < 64; chunk++) {
+				int count = (random.nextInt(8) == 0) ? PostingList.DENSE_CARDINALITY + random.nextInt(CHUNK_SIZE / 4) : random.nextInt(50);
+				for (int i = 0; i < count; i++)
+					appended.add(chunk * CHUNK_SIZE + random.nextInt(CHUNK_SIZE));
+			}
+		}
+
+		// appends in mostly ascending order, with out-of-order runs and repeated recipeId's
+		Collections.sort(appended);
+		for (int i = 0; i + 1 < appended.size(); i += 1 + random.nextInt(100))
+			Collections.swap(appended, i, i + 1);
+		for (int recipeId : appended) {
+			result.add(recipeId);
+			if (random.nextInt(20) == 0)
+				result.add(recipeId);
+		}
+
+		recipeIds.addAll(appended);
+		return result;
+	}
+
+	/**
+	 * Helper function which returns a random term of few distinct letters.
+	 * @param random the source of randomness.
+	 * @param length the length of the term.
+	 * @return the term.
+	 */
+	private static String randomTerm(Random random, int length) {
+		char[] term = new char[length];
+		for (int i = 0; i < length; i++)
+			term[i] = TERM_LETTERS.charAt(random.nextInt(TERM_LETTERS.length()));
+
+		return new String(term);
+	}
+}
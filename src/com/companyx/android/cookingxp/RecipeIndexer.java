@@ -0,0 +1,141 @@
+package com.companyx.android.cookingxp;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+import com.companyx.android.cookingxp.RecipeDatabase.Recipe;
+import com.companyx.android.cookingxp.RecipeDatabase.RecipeSink;
+
+/**
+ * Recipe Indexer
+ *
+ * Pipelined ingestion stage between a Recipe producer and the RecipeDatabase.
+ * Producers hand parsed Recipes to a bounded queue and keep parsing, while a single worker thread drains the queue into RecipeDatabase.addRecipe(), so parsing and indexing overlap on separate cores.
+ * A full queue blocks the producer until the worker catches up, bounding the Recipes held in flight.
+ * There is one worker because the database indexes are not thread-safe; Recipes are indexed in the order they are accepted.
+ *
+ * USAGE:
+ * RecipeIndexer indexer = new RecipeIndexer(recipeDatabase, RecipeIndexer.DEFAULT_CAPACITY);
+ * indexer.accept(recipe); (once per Recipe, from one producer thread)
+ * indexer.finish().get(); (waits until every accepted Recipe is indexed)
+ *
+ * @author James Chin <jameslchin@gmail.com>
+ */
+final class RecipeIndexer implements RecipeSink {
+	// CONSTANTS
+	static final int DEFAULT_CAPACITY = 256; // Recipes held in flight between producer and worker
+	private static final long POLL_INTERVAL_MS = 100; // how often a blocked producer checks that the worker is still running
+	private static final Recipe END = new Recipe(-1, null, null, null, null, null, null, null, (byte) 0); // end of input marker
+
+	// STATE VARIABLES
+	private final BlockingQueue<Recipe> queue;
+	private final FutureTask<Integer> worker; // result is the number of Recipes indexed
+	private final Thread thread;
+
+	/**
+	 * Creates the indexer and starts its worker thread.
+	 * @param recipeDatabase the database to index Recipes into.
+	 * @param capacity the maximum number of Recipes waiting to be indexed.
+	 */
+	RecipeIndexer(final RecipeDatabase recipeDatabase, int capacity) {
+		queue = new ArrayBlockingQueue<Recipe>(capacity);
+		worker = new FutureTask<Integer>(new Callable<Integer>() {
+			@Override
+			public Integer call() throws InterruptedException {
+				List<Recipe> batch = new ArrayList<Recipe>(queue.remainingCapacity());
+				int count = 0;
+
+				while (true) {
+					// wait for one Recipe, then take whatever else is ready without locking per Recipe
+					batch.add(queue.take());
+					queue.drainTo(batch);
+
+					for (Recipe recipe : batch) {
+						if (recipe == END)
+							return count;
+						if (Thread.interrupted())
+							throw new InterruptedException();
+
+						recipeDatabase.addRecipe(recipe);
+						count++;
+					}
+
+					batch.clear();
+				}
+			}
+		});
+
+		thread = new Thread(worker, "RecipeIndexer");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Queues a Recipe for indexing, blocking while the queue is full.
+	 * @param recipe the Recipe to index.
+	 * @throws InterruptedException if interrupted while waiting for space.
+	 * @throws IllegalStateException if the worker has stopped, with the worker failure as its cause.
+	 */
+	@Override
+	public void accept(Recipe recipe) throws InterruptedException {
+		put(recipe);
+	}
+
+	/**
+	 * Stops the worker without indexing the Recipes still queued, returning once it no longer touches the database.
+	 * Used when the producer fails, so a partially loaded input does not keep a thread alive and can be unloaded safely.
+	 */
+	void cancel() {
+		worker.cancel(true);
+		queue.clear();
+
+		// the caller's own interrupt is restored once the worker has stopped
+		boolean interrupted = Thread.interrupted();
+		while (thread.isAlive()) {
+			try {
+				thread.join();
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+
+		if (interrupted)
+			Thread.currentThread().interrupt();
+	}
+
+	/**
+	 * Signals the end of input.
+	 * No Recipes may be accepted afterwards.
+	 * @return a Future completing with the number of Recipes indexed once every accepted Recipe has been added to the database.
+	 * @throws InterruptedException if interrupted while waiting for space.
+	 */
+	Future<Integer> finish() throws InterruptedException {
+		put(END);
+		return worker;
+	}
+
+	/**
+	 * Helper function which queues an element, failing instead of blocking forever if the worker has stopped.
+	 * @param recipe the Recipe or end marker to queue.
+	 * @throws InterruptedException if interrupted while waiting for space.
+	 */
+	private void put(Recipe recipe) throws InterruptedException {
+		while (!queue.offer(recipe, POLL_INTERVAL_MS, TimeUnit.MILLISECONDS)) {
+			if (worker.isDone()) {
+				try {
+					worker.get();
+				} catch (ExecutionException e) {
+					throw new IllegalStateException("indexing failed", e.getCause());
+				}
+				throw new IllegalStateException("indexing stopped");
+			}
+		}
+	}
+}
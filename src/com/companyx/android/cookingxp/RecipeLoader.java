@@ -1,147 +1,786 @@
 package com.companyx.android.cookingxp;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
-import java.util.Scanner;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-
-import android.util.Log;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import com.companyx.android.cookingxp.RecipeDatabase.Recipe;
 import com.companyx.android.cookingxp.RecipeDatabase.RecipeDirection;
 import com.companyx.android.cookingxp.RecipeDatabase.RecipeIngredient;
+import com.companyx.android.cookingxp.RecipeDatabase.RecipeList;
+import com.companyx.android.cookingxp.RecipeDatabase.RecipeSink;
 import com.companyx.android.cookingxp.RecipeDatabase.RecipeTime;
 
-@SuppressWarnings("unused")
-// Recipe Reader
-// @author Adam Hackbarth <adam.hackbarth@gmail.com>
+/**
+ * Recipe Reader
+ *
+ * Single-pass parser for the raw recipe data file. The raw bytes are scanned in place for line breaks and ':' delimiters and fed through a small state machine.
+ * Strings are only created for the fields kept in a Recipe, so allocations grow with the retained fields rather than with the input size.
+ *
+ * The file is decoded as UTF-8 if it is valid UTF-8 (a UTF-8 byte order mark is skipped), and as ISO-8859-1 otherwise,
+ * e.g. for the degree signs and accented letters of files saved by Latin-1 editors.
+ *
+ * RECORD FORMAT:
+ * 0:E
+ * Title:Author:boxId:boxId...
+ * prepTime:inactivePrepTime:cookTime:servings
+ * amount:measurement:ingredient:notes (one line per ingredient)
+ * _direction:direction:direction...
+ *
+ * @author Adam Hackbarth <adam.hackbarth@gmail.com>
+ */
 public class RecipeLoader {
+	// CONSTANTS
+	static final String RECORD_MARKER = "0:E";
+	static final Charset UTF_8 = Charset.forName("UTF-8");
+	static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+	private static final int BUFFER_SIZE = 8192;
+	private static final int NUM_OF_TIME_FIELDS = 4;
+	private static final int NUM_OF_INGREDIENT_FIELDS = 4;
+	private static final int MIN_PARALLEL_BYTES = 64 * 1024; // smaller inputs are parsed sequentially, thread start-up would dominate
+	private static final int CHUNKS_PER_THREAD = 4; // extra chunks even out uneven record sizes across threads
+
+	// PARSER STATES
+	private static final int STATE_SEEK_RECORD = 0; // skipping lines until the next record marker
+	private static final int STATE_TITLE = 1; // expecting the title line, extra record markers are skipped
+	private static final int STATE_TIME = 2; // expecting the time and servings line
+	private static final int STATE_FIRST_INGREDIENT = 3; // expecting the first ingredient line
+	private static final int STATE_INGREDIENTS = 4; // expecting further ingredient lines or the directions line
+
+	// SYSTEM
 	InputStream inputStream;
 	RecipeDatabase recipeDatabase;
 
+	// INPUT, read on first use
+	private ByteBuffer buffer; // raw file contents, only accessed with absolute reads
+	private byte[] array; // backing array of the buffer, null for direct buffers
+	private int arrayOffset;
+	private Charset charset;
+	private int dataStart; // offset of the first byte after any byte order mark
+	private byte[] scratch = new byte[256]; // reused to lowercase fields and to copy fields out of direct buffers
+
+	// FIELD BUFFERS, byte offsets of the fields of the current line, reused for every line to avoid per-line allocations
+	private int[] fieldStart = new int[16];
+	private int[] fieldEnd = new int[16];
+	private int fieldCount;
+
+	// RECORD UNDER CONSTRUCTION
+	private String title;
+	private String author;
+	private List<Short> boxAssignment;
+	private RecipeTime recipeTime;
+	private byte numOfServings;
+	private List<RecipeIngredient> ingredients;
+
 	// constructor
 	RecipeLoader(InputStream inputStream, RecipeDatabase recipeDatabase) {
 		this.inputStream = inputStream;
 		this.recipeDatabase = recipeDatabase;
 	}
 
+	/**
+	 * Creates a loader for raw file contents already in memory, e.g. a memory-mapped resource.
+	 * @param buffer the raw file contents, from position to limit; the buffer is read without being modified.
+	 * @param recipeDatabase the database to load into.
+	 */
+	RecipeLoader(ByteBuffer buffer, RecipeDatabase recipeDatabase) {
+		this.recipeDatabase = recipeDatabase;
+		setInput(buffer.slice());
+	}
+
+	/**
+	 * Creates a loader parsing one chunk of input already prepared by another loader.
+	 * @param source the loader whose input and charset to share.
+	 */
+	private RecipeLoader(RecipeLoader source) {
+		buffer = source.buffer.duplicate();
+		array = source.array;
+		arrayOffset = source.arrayOffset;
+		charset = source.charset;
+		dataStart = source.dataStart;
+	}
+
+	/**
+	 * Parses the input and adds each Recipe to the database, numbering Recipes sequentially from 0 in file order.
+	 * On multi-core devices parsing and indexing are pipelined: parsed Recipes are handed to a RecipeIndexer while the next records are parsed.
+	 * Malformed numeric fields throw NumberFormatException, lines with missing fields throw ArrayIndexOutOfBoundsException; Recipes before the malformed record may already have been added.
+	 */
 	public void loadData() {
-		
-		/* Loading Raw Data from File Location into Scanner */
-		Scanner scanner = new Scanner(inputStream);
-		scanner.useDelimiter(System.getProperty("line.separator"));
-		String INPUT = scanner.next();
-		String keyLine = "";
-		int recipeNumber = 0;
-		
-		while (scanner.hasNext()) {
-			if ("0:E".matches(INPUT.trim())) {
-				ArrayList<String> ingredListArray = new ArrayList<String>();
-				List<Short> boxAssignment = new ArrayList<Short>();
-				List<String> directList = new ArrayList<String>();
-				List<Integer> linkedRecipe = new ArrayList<Integer>();
-				keyLine = INPUT; // saving the recipe key line
-				String initVal = scanner.next(); // Starting Point Holder
-				String regex = "\\b  +";
-				String blank = "";
-				String title = "";
-				String auth = "";
-				INPUT = initVal;
-				
-				// Recipe Linking Placeholder - Currently just linking to itself
-				linkedRecipe.add(recipeNumber);
-
-				// Storing Recipe title
-				while (scanner.hasNext()) {
-					if ("0:E".equals(INPUT.trim())) {
-						INPUT = scanner.next();
-					} else {
-						title = INPUT;
-						INPUT = scanner.next();
-						break;
-					}
-				}
+		readInput();
 
-				// Check for Author and update auth string if one is found.
-				if (title.contains(":")) {
-					String titleS[] = title.split("\\b:");
-					title = titleS[0].trim();
-					auth = titleS[1].trim();
-					for (int j = 2; j < titleS.length; j++) {
-						int boxId = Integer.valueOf(titleS[j].trim());
-						boxAssignment.add((short) boxId);
-					}
-				}
-				
-				// Time Split into Int - then Short into the RecipeTime
-				String timeL[] = INPUT.split("\\:");
-				int pr = Integer.valueOf(timeL[0].trim());
-				int ipr = Integer.valueOf(timeL[1].trim());
-				int c = Integer.valueOf(timeL[2].trim());
-
-				RecipeTime timeC = new RecipeTime((short) pr, (short) ipr,
-						(short) c);
-
-				// Serving size byte (serveSize)
-				int q = Integer.valueOf(timeL[3].trim());
-				byte serveSize = (byte) q;
-				INPUT = scanner.next();
-
-				// Grabbing Recipe Ingredients
-				while (scanner.hasNext()) {
-					Log.d("RECIPE INGREDIENTS LOOP", INPUT);
-					ingredListArray.add(INPUT);
-					INPUT = scanner.next();
-					if (INPUT.contains("_")) {
-						Log.d("Looking for Directions", "FOUND THEM");
-						break;
+		// a single core would only interleave the two stages
+		if (Runtime.getRuntime().availableProcessors() < 2) {
+			for (Recipe recipe : parse(dataStart, buffer.limit()))
+				recipeDatabase.addRecipe(recipe);
+			return;
+		}
+
+		RecipeIndexer indexer = new RecipeIndexer(recipeDatabase, RecipeIndexer.DEFAULT_CAPACITY);
+
+		try {
+			parse(dataStart, buffer.limit(), indexer);
+			indexer.finish().get();
+		} catch (ExecutionException e) {
+			throw unwrap(e);
+		} catch (InterruptedException e) {
+			indexer.cancel();
+			Thread.currentThread().interrupt();
+		} catch (RuntimeException e) {
+			indexer.cancel();
+			throw e;
+		}
+	}
+
+	/**
+	 * Parses the input into a List of Recipes without touching the database, numbering Recipes sequentially from 0 in file order.
+	 * Malformed numeric fields throw NumberFormatException, lines with missing fields throw ArrayIndexOutOfBoundsException.
+	 * @return the List of parsed Recipes, in file order.
+	 */
+	List<Recipe> parseRecipes() {
+		readInput();
+
+		return parse(dataStart, buffer.limit());
+	}
+
+	/**
+	 * Parses the input on all available cores and adds each Recipe to the database.
+	 * The input is split into chunks on record marker lines, each record being self-contained, and the chunks are parsed by a thread pool sharing the same bytes.
+	 * Recipes are numbered exactly as loadData() would number them, and are added to the database in file order on the calling thread only, while later chunks are still being parsed.
+	 * Malformed records fail the same way as in loadData().
+	 */
+	public void loadDataParallel() {
+		readInput();
+		int numOfThreads = Runtime.getRuntime().availableProcessors();
+
+		// not worth the threads
+		if (numOfThreads < 2 || buffer.limit() - dataStart < MIN_PARALLEL_BYTES) {
+			for (Recipe recipe : parse(dataStart, buffer.limit()))
+				recipeDatabase.addRecipe(recipe);
+			return;
+		}
+
+		List<Integer> boundaries = findChunkBoundaries(buffer, dataStart, buffer.limit(), numOfThreads * CHUNKS_PER_THREAD);
+		ExecutorService executor = Executors.newFixedThreadPool(numOfThreads);
+
+		try {
+			// PARSE CHUNKS, each chunk numbers its Recipes from 0
+			List<Future<List<Recipe>>> chunks = new ArrayList<Future<List<Recipe>>>(boundaries.size() - 1);
+			for (int i = 0; i < boundaries.size() - 1; i++) {
+				final int chunkStart = boundaries.get(i);
+				final int chunkEnd = boundaries.get(i + 1);
+				chunks.add(executor.submit(new Callable<List<Recipe>>() {
+					@Override
+					public List<Recipe> call() {
+						return new RecipeLoader(RecipeLoader.this).parse(chunkStart, chunkEnd);
 					}
+				}));
+			}
+
+			// INDEX IN FILE ORDER, shifting each chunk to its sequential numbering
+			int firstRecipeId = 0;
+			for (Future<List<Recipe>> chunk : chunks) {
+				List<Recipe> recipes = chunk.get();
+
+				for (Recipe recipe : recipes) {
+					recipe.recipeId += firstRecipeId;
+					for (int i = 0; i < recipe.linkedRecipes.size(); i++)
+						recipe.linkedRecipes.set(i, recipe.linkedRecipes.get(i) + firstRecipeId);
+
+					recipeDatabase.addRecipe(recipe);
 				}
-				// Grabbing Recipe Directions/Instructions
-				String dirL[] = INPUT.substring(1, INPUT.length()).split("\\:");
-				directList = Arrays.asList(dirL);
-
-				while (scanner.hasNext()) {
-					if ("0:E".matches(INPUT.trim())) {
-						break;
-					} else {
-						INPUT = scanner.next();
-					}
+
+				firstRecipeId += recipes.size();
+			}
+		} catch (ExecutionException e) {
+			throw unwrap(e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Returns the charset of the raw recipe data: UTF-8 if the bytes are valid UTF-8, ISO-8859-1 otherwise.
+	 * Pure ASCII is reported as UTF-8.
+	 * @param buffer the raw file contents.
+	 * @param start the offset of the first byte to check, inclusive.
+	 * @param end the offset of the last byte to check, exclusive.
+	 * @return the detected charset.
+	 */
+	static Charset detectCharset(ByteBuffer buffer, int start, int end) {
+		int i = start;
+		while (i < end) {
+			int b = buffer.get(i) & 0xff;
+			if (b < 0x80) {
+				i++;
+				continue;
+			}
+
+			// lead byte determines the sequence length, overlong and surrogate forms are not valid UTF-8
+			int length;
+			int min;
+			if (b >= 0xc2 && b <= 0xdf) {
+				length = 2;
+				min = 0x80;
+			} else if (b >= 0xe0 && b <= 0xef) {
+				length = 3;
+				min = 0x800;
+			} else if (b >= 0xf0 && b <= 0xf4) {
+				length = 4;
+				min = 0x10000;
+			} else
+				return ISO_8859_1;
+
+			if (i + length > end)
+				return ISO_8859_1;
+
+			int codePoint = b & (0x7f >> length);
+			for (int j = 1; j < length; j++) {
+				int c = buffer.get(i + j) & 0xff;
+				if ((c & 0xc0) != 0x80)
+					return ISO_8859_1;
+				codePoint = (codePoint << 6) | (c & 0x3f);
+			}
+
+			if (codePoint < min || codePoint > 0x10ffff || (codePoint >= 0xd800 && codePoint <= 0xdfff))
+				return ISO_8859_1;
+
+			i += length;
+		}
+
+		return UTF_8;
+	}
+
+	/**
+	 * Helper function which returns the byte offsets splitting the input into roughly equal chunks.
+	 * Every chunk after the first starts on a record marker line, so each chunk holds whole records only.
+	 * Lines end with "\n", "\r\n" or "\r", as in parse().
+	 * @param buffer the raw file contents.
+	 * @param start the offset of the first byte of the recipe data.
+	 * @param end the offset after the last byte of the recipe data.
+	 * @param numOfChunks the desired number of chunks.
+	 * @return the ascending List of chunk offsets, starting with start and ending with end.
+	 */
+	static List<Integer> findChunkBoundaries(ByteBuffer buffer, int start, int end, int numOfChunks) {
+		int length = end - start;
+		List<Integer> result = new ArrayList<Integer>(numOfChunks + 1);
+		result.add(start);
+
+		for (int i = 1; i < numOfChunks; i++) {
+			int lineStart = Math.max(start + i * (length / numOfChunks), result.get(result.size() - 1));
+
+			// move to the start of the next line, unless already there; the middle of a "\r\n" is not a line start
+			if (lineStart > start) {
+				byte before = buffer.get(lineStart - 1);
+				if ((before != '\n' && before != '\r') || (before == '\r' && lineStart < end && buffer.get(lineStart) == '\n'))
+					lineStart = nextLine(buffer, lineStart, end);
+			}
+
+			// find the next record marker line
+			while (lineStart < end) {
+				int nextLineStart = nextLine(buffer, lineStart, end);
+				if (isRecordMarker(buffer, lineStart, nextLineStart))
+					break;
+
+				lineStart = nextLineStart;
+			}
+
+			if (lineStart >= end)
+				break;
+			if (lineStart > result.get(result.size() - 1))
+				result.add(lineStart);
+		}
+
+		result.add(end);
+
+		return result;
+	}
+
+	/**
+	 * Helper function which reads the whole input stream into memory, once, and detects its charset.
+	 */
+	private void readInput() {
+		if (buffer != null)
+			return;
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(BUFFER_SIZE);
+		byte[] chunk = new byte[BUFFER_SIZE];
+
+		try {
+			int n;
+			while ((n = inputStream.read(chunk)) != -1)
+				bytes.write(chunk, 0, n);
+		} catch (IOException e) {
+			e.printStackTrace();
+		} finally {
+			try {
+				inputStream.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+
+		setInput(ByteBuffer.wrap(bytes.toByteArray()));
+	}
+
+	/**
+	 * Helper function which sets the raw input, skipping a UTF-8 byte order mark and detecting the charset.
+	 * @param input the raw file contents, starting at offset 0.
+	 */
+	private void setInput(ByteBuffer input) {
+		buffer = input;
+		if (buffer.hasArray()) {
+			array = buffer.array();
+			arrayOffset = buffer.arrayOffset();
+		}
+
+		int limit = buffer.limit();
+		if (limit >= 3 && (buffer.get(0) & 0xff) == 0xef && (buffer.get(1) & 0xff) == 0xbb && (buffer.get(2) & 0xff) == 0xbf) {
+			dataStart = 3;
+			charset = UTF_8;
+		} else
+			charset = detectCharset(buffer, 0, limit);
+	}
+
+	/**
+	 * Parses the lines of a range of the input into a List of Recipes, numbering Recipes sequentially from 0.
+	 * @param start the offset of the first line, inclusive.
+	 * @param end the offset after the last line, exclusive.
+	 * @return the List of parsed Recipes, in reading order.
+	 */
+	private List<Recipe> parse(int start, int end) {
+		RecipeList result = new RecipeList();
+
+		try {
+			parse(start, end, result);
+		} catch (InterruptedException e) {
+			// a List never blocks
+			Thread.currentThread().interrupt();
+		}
+
+		return result;
+	}
+
+	/**
+	 * Parses the lines of a range of the input, passing each Recipe to the sink as soon as its record is complete and numbering Recipes sequentially from 0.
+	 * Lines end with "\n", "\r\n" or "\r".
+	 * A record still incomplete at the end of the range is parsed on past it, so a chunk of the input fails on a stray record marker exactly where parsing the whole input would.
+	 * @param start the offset of the first line, inclusive.
+	 * @param end the offset after the last line, exclusive.
+	 * @param sink the destination of the parsed Recipes, in reading order.
+	 * @return the number of parsed Recipes.
+	 * @throws InterruptedException if interrupted while the sink is full.
+	 */
+	private int parse(int start, int end, RecipeSink sink) throws InterruptedException {
+		int count = 0;
+		int state = STATE_SEEK_RECORD;
+
+		int limit = buffer.limit();
+		int lineStart = start;
+		while (lineStart < end || (lineStart < limit && state > STATE_TITLE)) {
+			// find the end of the line
+			int lineEnd = lineStart;
+			byte b = 0;
+			while (lineEnd < limit && (b = buffer.get(lineEnd)) != '\n' && b != '\r')
+				lineEnd++;
+
+			switch (state) {
+			case STATE_SEEK_RECORD:
+				if (isRecordMarker(buffer, lineStart, lineEnd))
+					state = STATE_TITLE;
+				break;
+			case STATE_TITLE:
+				if (!isRecordMarker(buffer, lineStart, lineEnd)) {
+					parseTitle(lineStart, lineEnd);
+					state = STATE_TIME;
 				}
-				
-				// Separating the Ingredients for Database import
-				List<RecipeIngredient> riList = new ArrayList<RecipeIngredient>();
-				for (String z : ingredListArray) {
-					regex = "\\:";
-					Pattern p = Pattern.compile(regex);
-					String[] ami = p.split(z.toLowerCase());
-					RecipeIngredient newIngredient = new RecipeIngredient(
-							ami[0].trim(), ami[1].trim(), ami[2].trim(),
-							ami[3].trim());
-					riList.add(newIngredient);
+				break;
+			case STATE_TIME:
+				parseTime(lineStart, lineEnd);
+				state = STATE_FIRST_INGREDIENT;
+				break;
+			case STATE_FIRST_INGREDIENT:
+				ingredients.add(parseIngredient(lineStart, lineEnd));
+				state = STATE_INGREDIENTS;
+				break;
+			case STATE_INGREDIENTS:
+				if (indexOf(buffer, (byte) '_', lineStart, lineEnd) < 0) {
+					ingredients.add(parseIngredient(lineStart, lineEnd));
+					break;
 				}
 
-				List<RecipeDirection> dirList = new ArrayList<RecipeDirection>();
-				for (String s : directList) {
-					dirList.add(new RecipeDirection(s));
-				}
+				sink.accept(buildRecipe(count++, parseDirections(lineStart, lineEnd)));
+				state = STATE_SEEK_RECORD;
+				break;
+			}
 
-				Recipe newRecipe = new Recipe(recipeNumber, title, auth,
-						riList, dirList, linkedRecipe, boxAssignment, timeC,
-						serveSize);
-				recipeDatabase.addRecipe(newRecipe);
+			// skip the line break, "\r\n" counts as one
+			lineStart = lineEnd + 1;
+			if (b == '\r' && lineStart < limit && buffer.get(lineStart) == '\n')
+				lineStart++;
+		}
 
-				recipeNumber++; // increment recipe numbering system
+		// last record cut off before its directions line
+		if (state == STATE_INGREDIENTS)
+			sink.accept(buildRecipe(count++, new ArrayList<RecipeDirection>()));
 
-			} else {
-				INPUT = scanner.next();
+		return count;
+	}
+
+	/**
+	 * Helper function which assembles the record under construction into a Recipe.
+	 * @param recipeId the unique identifier to assign to the Recipe.
+	 * @param directions the parsed List of RecipeDirections.
+	 * @return the assembled Recipe.
+	 */
+	private Recipe buildRecipe(int recipeId, List<RecipeDirection> directions) {
+		// Recipe Linking Placeholder - Currently just linking to itself
+		List<Integer> linkedRecipe = new ArrayList<Integer>(1);
+		linkedRecipe.add(recipeId);
+
+		return new Recipe(recipeId, title, author, ingredients, directions, linkedRecipe, boxAssignment, recipeTime, numOfServings);
+	}
+
+	/**
+	 * Returns the trimmed String value of the specified field of the last split line.
+	 * @param index the index of the field.
+	 * @param lowerCase true to convert the value to lowercase.
+	 * @return the trimmed String value of the field.
+	 */
+	private String field(int index, boolean lowerCase) {
+		if (index >= fieldCount)
+			throw new ArrayIndexOutOfBoundsException(index);
+
+		int start = fieldStart[index];
+		int end = fieldEnd[index];
+
+		while (start < end && (buffer.get(start) & 0xff) <= ' ')
+			start++;
+		while (end > start && (buffer.get(end - 1) & 0xff) <= ' ')
+			end--;
+
+		return string(start, end, lowerCase);
+	}
+
+	/**
+	 * Returns the integer value of the specified field of the last split line, ignoring surrounding whitespace.
+	 * @param index the index of the field.
+	 * @return the integer value of the field.
+	 * @throws NumberFormatException if the field is not a valid integer.
+	 */
+	private int intField(int index) {
+		if (index >= fieldCount)
+			throw new ArrayIndexOutOfBoundsException(index);
+
+		int start = fieldStart[index];
+		int end = fieldEnd[index];
+
+		while (start < end && (buffer.get(start) & 0xff) <= ' ')
+			start++;
+		while (end > start && (buffer.get(end - 1) & 0xff) <= ' ')
+			end--;
+
+		boolean negative = false;
+		if (start < end && (buffer.get(start) == '-' || buffer.get(start) == '+')) {
+			negative = buffer.get(start) == '-';
+			start++;
+		}
+
+		if (start == end)
+			throw new NumberFormatException("For input string: \"" + string(fieldStart[index], fieldEnd[index], false) + "\"");
+
+		int result = 0;
+		for (int i = start; i < end; i++) {
+			byte b = buffer.get(i);
+			if (b < '0' || b > '9' || result > (Integer.MAX_VALUE - 9) / 10)
+				return Integer.parseInt(string(fieldStart[index], fieldEnd[index], false).trim()); // let the platform report the error
+			result = result * 10 + (b - '0');
+		}
+
+		return negative ? -result : result;
+	}
+
+	/**
+	 * Returns the offset of the first occurrence of a byte in a range of the buffer.
+	 * @param buffer the buffer to search.
+	 * @param b the byte to find.
+	 * @param start the start offset of the range, inclusive.
+	 * @param end the end offset of the range, exclusive.
+	 * @return the offset of the byte, or -1 if it does not occur in the range.
+	 */
+	private static int indexOf(ByteBuffer buffer, byte b, int start, int end) {
+		for (int i = start; i < end; i++) {
+			if (buffer.get(i) == b)
+				return i;
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Returns the offset of the line following the line at the specified offset, "\r\n" counting as one line break.
+	 * @param buffer the buffer to search.
+	 * @param offset an offset within the line.
+	 * @param end the end offset of the input, exclusive.
+	 * @return the offset of the next line, or end if the line is the last one.
+	 */
+	private static int nextLine(ByteBuffer buffer, int offset, int end) {
+		while (offset < end) {
+			byte b = buffer.get(offset++);
+			if (b == '\n')
+				return offset;
+			if (b == '\r')
+				return (offset < end && buffer.get(offset) == '\n') ? offset + 1 : offset;
+		}
+
+		return end;
+	}
+
+	/**
+	 * Returns true if the specified range of the buffer is a record marker line, ignoring surrounding whitespace.
+	 * @param buffer the buffer containing the line.
+	 * @param start the start offset of the line, inclusive.
+	 * @param end the end offset of the line, exclusive.
+	 * @return true if the line is a record marker, false otherwise.
+	 */
+	private static boolean isRecordMarker(ByteBuffer buffer, int start, int end) {
+		while (start < end && (buffer.get(start) & 0xff) <= ' ')
+			start++;
+		while (end > start && (buffer.get(end - 1) & 0xff) <= ' ')
+			end--;
+
+		if (end - start != RECORD_MARKER.length())
+			return false;
+
+		for (int i = 0; i < RECORD_MARKER.length(); i++) {
+			if (buffer.get(start + i) != RECORD_MARKER.charAt(i))
+				return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Returns true if the character ending just before the specified offset is a letter, digit or underscore.
+	 * @param offset the offset after the character.
+	 * @return true if the preceding character is a word character, false otherwise.
+	 */
+	private boolean isWordCharBefore(int offset) {
+		int b = buffer.get(offset - 1) & 0xff;
+		if (b < 0x80 || charset != UTF_8)
+			return b == '_' || Character.isLetterOrDigit((char) b);
+
+		// step back over UTF-8 continuation bytes to the lead byte, the input has been validated
+		int start = offset - 1;
+		while ((buffer.get(start) & 0xc0) == 0x80)
+			start--;
+
+		return Character.isLetterOrDigit(string(start, offset, false).codePointAt(0));
+	}
+
+	/**
+	 * Parses the directions line, ignoring its leading character.
+	 * @param start the start offset of the line, inclusive.
+	 * @param end the end offset of the line, exclusive.
+	 * @return the parsed List of RecipeDirections.
+	 */
+	private List<RecipeDirection> parseDirections(int start, int end) {
+		// skip the leading character, which may span several bytes in UTF-8
+		int first = start + 1;
+		if (charset == UTF_8) {
+			while (first < end && (buffer.get(first) & 0xc0) == 0x80)
+				first++;
+		}
+
+		split(first, end, false);
+
+		List<RecipeDirection> result = new ArrayList<RecipeDirection>(fieldCount);
+		for (int i = 0; i < fieldCount; i++)
+			result.add(new RecipeDirection(string(fieldStart[i], fieldEnd[i], false)));
+
+		return result;
+	}
+
+	/**
+	 * Parses an ingredient line. All fields are converted to lowercase.
+	 * @param start the start offset of the line, inclusive.
+	 * @param end the end offset of the line, exclusive.
+	 * @return the parsed RecipeIngredient.
+	 */
+	private RecipeIngredient parseIngredient(int start, int end) {
+		split(start, end, false);
+
+		if (fieldCount < NUM_OF_INGREDIENT_FIELDS)
+			throw new ArrayIndexOutOfBoundsException(fieldCount);
+
+		return new RecipeIngredient(field(0, true), field(1, true), field(2, true), field(3, true));
+	}
+
+	/**
+	 * Parses the time and servings line and stores the values in the record under construction.
+	 * @param start the start offset of the line, inclusive.
+	 * @param end the end offset of the line, exclusive.
+	 */
+	private void parseTime(int start, int end) {
+		split(start, end, false);
+
+		if (fieldCount < NUM_OF_TIME_FIELDS)
+			throw new ArrayIndexOutOfBoundsException(fieldCount);
+
+		recipeTime = new RecipeTime((short) intField(0), (short) intField(1), (short) intField(2));
+		numOfServings = (byte) intField(3);
+	}
+
+	/**
+	 * Parses the title line and starts a new record under construction.
+	 * If the title contains an author, it is followed by the list of boxIds the Recipe belongs to.
+	 * @param start the start offset of the line, inclusive.
+	 * @param end the end offset of the line, exclusive.
+	 */
+	private void parseTitle(int start, int end) {
+		author = "";
+		boxAssignment = new ArrayList<Short>();
+		ingredients = new ArrayList<RecipeIngredient>();
+
+		// Check for Author and update author string if one is found.
+		if (indexOf(buffer, (byte) ':', start, end) < 0) {
+			title = string(start, end, false);
+			return;
+		}
+
+		split(start, end, true);
+
+		title = field(0, false);
+		author = field(1, false);
+		for (int i = 2; i < fieldCount; i++)
+			boxAssignment.add((short) intField(i));
+	}
+
+	/**
+	 * Splits a line on ':' into the reusable field buffers, following the semantics of String.split(): trailing empty fields are dropped, and a line without any delimiter yields itself as the only field.
+	 * @param start the offset to start splitting from, inclusive.
+	 * @param end the end offset of the line, exclusive.
+	 * @param wordBoundary if true, only split on delimiters directly preceded by a letter, digit or underscore.
+	 */
+	private void split(int start, int end, boolean wordBoundary) {
+		fieldCount = 0;
+
+		int fieldBegin = start;
+		for (int i = start; i < end; i++) {
+			if (buffer.get(i) != ':')
+				continue;
+
+			if (wordBoundary && (i == start || !isWordCharBefore(i)))
+				continue;
+
+			addField(fieldBegin, i);
+			fieldBegin = i + 1;
+		}
+
+		// no delimiter found
+		if (fieldCount == 0) {
+			addField(start, end);
+			return;
+		}
+
+		addField(fieldBegin, end);
+
+		// drop trailing empty fields
+		while (fieldCount > 0 && fieldStart[fieldCount - 1] == fieldEnd[fieldCount - 1])
+			fieldCount--;
+	}
+
+	/**
+	 * Decodes a range of the input into a String, the only place the parser allocates character data.
+	 * @param start the start offset, inclusive.
+	 * @param end the end offset, exclusive.
+	 * @param lowerCase true to convert the result to lowercase.
+	 * @return the decoded String.
+	 */
+	private String string(int start, int end, boolean lowerCase) {
+		int length = end - start;
+		byte[] bytes = array;
+		int offset = arrayOffset + start;
+
+		// copy out of direct buffers, and before lowercasing so the input stays untouched
+		if (bytes == null || lowerCase) {
+			if (scratch.length < length)
+				scratch = new byte[Math.max(length, scratch.length * 2)];
+
+			if (bytes == null) {
+				ByteBuffer view = buffer.duplicate();
+				view.position(start);
+				view.get(scratch, 0, length);
+			} else
+				System.arraycopy(bytes, offset, scratch, 0, length);
+
+			bytes = scratch;
+			offset = 0;
+		}
+
+		// lowercase ASCII in place, other characters after decoding
+		boolean ascii = true;
+		if (lowerCase) {
+			for (int i = 0; i < length; i++) {
+				byte b = bytes[i];
+				if (b >= 'A' && b <= 'Z')
+					bytes[i] = (byte) (b + ('a' - 'A'));
+				else if (b < 0)
+					ascii = false;
 			}
 		}
 
-		scanner.close();
+		String result;
+		try {
+			result = new String(bytes, offset, length, charset.name());
+		} catch (UnsupportedEncodingException e) {
+			// both detectable charsets are supported on every Java platform
+			throw new IllegalStateException(e);
+		}
+
+		return (lowerCase && !ascii) ? result.toLowerCase(Locale.US) : result;
+	}
+
+	/**
+	 * Appends a field to the reusable field buffers, growing them if necessary.
+	 * @param start the start offset of the field, inclusive.
+	 * @param end the end offset of the field, exclusive.
+	 */
+	private void addField(int start, int end) {
+		if (fieldCount == fieldStart.length) {
+			int[] newStart = new int[fieldCount * 2];
+			int[] newEnd = new int[fieldCount * 2];
+			System.arraycopy(fieldStart, 0, newStart, 0, fieldCount);
+			System.arraycopy(fieldEnd, 0, newEnd, 0, fieldCount);
+			fieldStart = newStart;
+			fieldEnd = newEnd;
+		}
+
+		fieldStart[fieldCount] = start;
+		fieldEnd[fieldCount] = end;
+		fieldCount++;
+	}
+
+	/**
+	 * Helper function which returns the failure of a pipeline stage, so malformed records are reported the same way as by the sequential parser.
+	 * @param e the ExecutionException thrown by the stage's Future.
+	 * @return the RuntimeException to throw.
+	 */
+	private static RuntimeException unwrap(ExecutionException e) {
+		if (e.getCause() instanceof RuntimeException)
+			return (RuntimeException) e.getCause();
+		return new RuntimeException(e.getCause());
 	}
-}
\ No newline at end of file
+}
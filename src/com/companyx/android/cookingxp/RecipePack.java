@@ -0,0 +1,637 @@
+package com.companyx.android.cookingxp;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import android.content.res.AssetFileDescriptor;
+import android.content.res.Resources;
+
+import com.companyx.android.cookingxp.RecipeDatabase.Recipe;
+import com.companyx.android.cookingxp.RecipeDatabase.RecipeBodySource;
+import com.companyx.android.cookingxp.RecipeDatabase.RecipeDirection;
+import com.companyx.android.cookingxp.RecipeDatabase.RecipeIngredient;
+import com.companyx.android.cookingxp.RecipeDatabase.RecipeList;
+import com.companyx.android.cookingxp.RecipeDatabase.RecipeSink;
+import com.companyx.android.cookingxp.RecipeDatabase.RecipeTime;
+
+/**
+ * Recipe Pack
+ *
+ * Precompiled binary form of the raw recipe data file, loaded with bulk reads instead of text parsing.
+ * The text format remains the authoring source; rebuild the pack whenever res/raw/master_recipe_data.txt changes:
+ * java com.companyx.android.cookingxp.RecipePack res/raw/master_recipe_data.txt res/raw/master_recipe_pack.bin
+ * The pack records the checksum of the text it was compiled from, so a pack left stale by an edit is detected by isCurrent() and the text is loaded instead.
+ *
+ * LAYOUT (big-endian):
+ * int magic, short version, long sourceChecksum, int recipeCount, int stringCount
+ * string table: stringCount x (int byteLength, UTF-8 bytes)
+ * record section: recipeCount x recipe record
+ *
+ * RECIPE RECORD:
+ * int recipeId, int name, int author, short prepTime, short inactivePrepTime, short cookTime, byte numOfServings
+ * short boxCount, boxCount x short boxId
+ * short linkedCount, linkedCount x int recipeId
+ * short ingredientCount, ingredientCount x (int amount, int measurement, int ingredientName, int notes)
+ * short directionCount, directionCount x int direction
+ * Strings inside records are indexes into the string table.
+ *
+ * @author James Chin <jameslchin@gmail.com>
+ */
+final class RecipePack {
+	// CONSTANTS
+	static final int MAGIC = 0x43585052; // "CXPR"
+	static final short VERSION = 3;
+	static final int BODY_CACHE_SIZE = 32; // number of lazily loaded Recipe bodies held in memory
+	private static final int HEADER_SIZE = 26;
+	private static final String UTF_8 = "UTF-8";
+
+	/**
+	 * Loads the ingredients and directions of header-only Recipes from the pack on demand.
+	 * The most recently used bodies are held in a bounded LRU cache, older ones are parsed again when requested.
+	 */
+	static final class BodySource implements RecipeBodySource {
+		final int recipeCount;
+		private final ByteBuffer buffer;
+		private final int[] stringOffsets; // absolute offset of each string table entry
+		private final String[] headerStrings; // decoded names, authors and ingredient names, shared by header and body
+		private final Map<Integer, Body> cache; // maps bodyOffset to the loaded body, in access order
+		private byte[] scratch = new byte[256];
+
+		/**
+		 * Cache entry holding one loaded Recipe body.
+		 */
+		private static final class Body {
+			List<RecipeIngredient> ingredients;
+			List<RecipeDirection> directions;
+		}
+
+		@SuppressWarnings("serial")
+		BodySource(ByteBuffer buffer, int recipeCount, int[] stringOffsets) {
+			this.buffer = buffer;
+			this.recipeCount = recipeCount;
+			this.stringOffsets = stringOffsets;
+			headerStrings = new String[stringOffsets.length];
+			cache = new LinkedHashMap<Integer, Body>(BODY_CACHE_SIZE, 0.75f, true) {
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<Integer, Body> eldest) {
+					return size() > BODY_CACHE_SIZE;
+				}
+			};
+		}
+
+		@Override
+		public List<RecipeDirection> getDirections(Recipe recipe) {
+			return getBody(recipe.bodyOffset).directions;
+		}
+
+		@Override
+		public List<RecipeIngredient> getIngredients(Recipe recipe) {
+			return getBody(recipe.bodyOffset).ingredients;
+		}
+
+		/**
+		 * Returns the body stored at the specified offset, parsing it if it is not cached.
+		 * @param bodyOffset the absolute offset of the body within the pack.
+		 * @return the loaded body.
+		 */
+		private synchronized Body getBody(int bodyOffset) {
+			Body body = cache.get(bodyOffset);
+			if (body != null)
+				return body;
+
+			body = new Body();
+			int position = bodyOffset;
+
+			int ingredientCount = buffer.getShort(position);
+			position += 2;
+			body.ingredients = new ArrayList<RecipeIngredient>(ingredientCount);
+			for (int i = 0; i < ingredientCount; i++, position += 16)
+				body.ingredients.add(new RecipeIngredient(string(buffer.getInt(position)), string(buffer.getInt(position + 4)), headerString(buffer.getInt(position + 8)), string(buffer.getInt(position + 12))));
+
+			int directionCount = buffer.getShort(position);
+			position += 2;
+			body.directions = new ArrayList<RecipeDirection>(directionCount);
+			for (int i = 0; i < directionCount; i++, position += 4)
+				body.directions.add(new RecipeDirection(string(buffer.getInt(position))));
+
+			cache.put(bodyOffset, body);
+
+			return body;
+		}
+
+		/**
+		 * Returns the string table entry at the specified index, decoding it once and keeping it for the lifetime of the pack.
+		 * Used for Strings held by Recipe headers.
+		 * @param index the string table index.
+		 * @return the decoded String.
+		 */
+		private synchronized String headerString(int index) {
+			String result = headerStrings[index];
+			if (result == null) {
+				result = string(index);
+				headerStrings[index] = result;
+			}
+
+			return result;
+		}
+
+		/**
+		 * Decodes the string table entry at the specified index.
+		 * @param index the string table index.
+		 * @return the decoded String.
+		 */
+		private synchronized String string(int index) {
+			int offset = stringOffsets[index];
+			int length = buffer.getInt(offset);
+			if (length > scratch.length)
+				scratch = new byte[Math.max(length, scratch.length * 2)];
+
+			ByteBuffer view = buffer.duplicate();
+			view.position(offset + 4);
+			view.get(scratch, 0, length);
+
+			return decode(scratch, 0, length);
+		}
+	}
+
+	/**
+	 * Private constructor, static utility class.
+	 */
+	private RecipePack() {
+	}
+
+	/**
+	 * Build-time entry point, compiles a raw recipe data file into a binary recipe pack.
+	 * @param args the source text file followed by the destination pack file.
+	 * @throws IOException if the source cannot be read or the destination cannot be written.
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length != 2) {
+			System.err.println("usage: RecipePack <master_recipe_data.txt> <master_recipe_pack.bin>");
+			System.exit(1);
+		}
+
+		ByteBuffer source;
+		InputStream in = new FileInputStream(args[0]);
+		try {
+			source = readFully(in);
+		} finally {
+			in.close();
+		}
+
+		List<Recipe> recipes = new RecipeLoader(source.duplicate(), null).parseRecipes();
+
+		OutputStream out = new FileOutputStream(args[1]);
+		try {
+			write(recipes, checksum(source), out);
+		} finally {
+			out.close();
+		}
+
+		System.out.println("Compiled " + recipes.size() + " recipes into " + args[1]);
+	}
+
+	/**
+	 * Opens the binary recipe pack stored as a raw resource.
+	 * The resource is memory-mapped when it is stored uncompressed in the APK, otherwise it is copied into a direct ByteBuffer with a single bulk read.
+	 * @param resources the application Resources.
+	 * @param resId the raw resource identifier of the pack.
+	 * @return a ByteBuffer positioned at the start of the pack.
+	 * @throws IOException if the resource cannot be read.
+	 */
+	static ByteBuffer open(Resources resources, int resId) throws IOException {
+		// MEMORY-MAPPED
+		try {
+			AssetFileDescriptor afd = resources.openRawResourceFd(resId);
+			if (afd != null) {
+				FileInputStream fis = new FileInputStream(afd.getFileDescriptor());
+				try {
+					return fis.getChannel().map(FileChannel.MapMode.READ_ONLY, afd.getStartOffset(), afd.getLength());
+				} finally {
+					fis.close();
+					afd.close();
+				}
+			}
+		} catch (Resources.NotFoundException e) {
+			// resource is compressed, fall through to the stream
+		}
+
+		// DIRECT BUFFER
+		InputStream in = resources.openRawResource(resId);
+		try {
+			return readFully(in);
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Returns true if a binary recipe pack of the current version was compiled from the current contents of its source text file.
+	 * Checksumming the raw text is a single pass over its bytes, far cheaper than parsing it.
+	 * @param resources the application Resources.
+	 * @param resId the raw resource identifier of the pack.
+	 * @param sourceResId the raw resource identifier of the text file the pack is compiled from.
+	 * @return true if the pack is up to date, false if it is missing, of another version or was compiled from other text.
+	 */
+	static boolean isCurrent(Resources resources, int resId, int sourceResId) {
+		try {
+			ByteBuffer pack = open(resources, resId);
+			if (!readMagic(pack))
+				return false;
+
+			return pack.getLong() == checksum(open(resources, sourceResId));
+		} catch (IOException e) {
+			e.printStackTrace();
+		} catch (Resources.NotFoundException e) {
+			e.printStackTrace();
+		}
+
+		return false;
+	}
+
+	/**
+	 * Reads all Recipes from a binary recipe pack.
+	 * @param buffer the pack contents, positioned at the start of the pack.
+	 * @return the List of Recipes in pack order, or null if the buffer is not a recipe pack of the current version.
+	 */
+	static List<Recipe> read(ByteBuffer buffer) {
+		RecipeList result = new RecipeList();
+
+		try {
+			if (!read(buffer, result))
+				return null;
+		} catch (InterruptedException e) {
+			// a List never blocks
+			Thread.currentThread().interrupt();
+		}
+
+		return result;
+	}
+
+	/**
+	 * Reads all Recipes from a binary recipe pack, passing each Recipe to the sink as soon as its record is decoded.
+	 * @param buffer the pack contents, positioned at the start of the pack.
+	 * @param sink the destination of the Recipes, in pack order.
+	 * @return true if the Recipes were read, false if the buffer is not a recipe pack of the current version.
+	 * @throws InterruptedException if interrupted while the sink is full.
+	 */
+	static boolean read(ByteBuffer buffer, RecipeSink sink) throws InterruptedException {
+		// HEADER
+		if (!readMagic(buffer))
+			return false;
+
+		buffer.getLong(); // source checksum
+		int recipeCount = buffer.getInt();
+		int stringCount = buffer.getInt();
+
+		// STRING TABLE
+		String[] strings = new String[stringCount];
+		byte[] scratch = new byte[256];
+		for (int i = 0; i < stringCount; i++) {
+			int length = buffer.getInt();
+			if (length > scratch.length)
+				scratch = new byte[Math.max(length, scratch.length * 2)];
+			buffer.get(scratch, 0, length);
+			strings[i] = decode(scratch, 0, length);
+		}
+
+		// RECORDS
+		for (int i = 0; i < recipeCount; i++)
+			sink.accept(readRecipe(buffer, strings));
+
+		return true;
+	}
+
+	/**
+	 * Reads Recipe headers from a binary recipe pack: name, author, boxes, time, servings and the ingredient names used for indexing.
+	 * Ingredients and directions stay in the buffer and are parsed when first requested, so the buffer must not be modified afterwards.
+	 * @param buffer the pack contents, positioned at the start of the pack.
+	 * @return the List of header-only Recipes in pack order, or null if the buffer is not a recipe pack of the current version.
+	 */
+	static List<Recipe> readHeaders(ByteBuffer buffer) {
+		BodySource bodySource = readBodySource(buffer);
+		if (bodySource == null)
+			return null;
+
+		return readHeaders(buffer, bodySource);
+	}
+
+	/**
+	 * Reads Recipe headers from a binary recipe pack whose BodySource has already been read.
+	 * @param buffer the pack contents, positioned at the record section as left by readBodySource().
+	 * @param bodySource the BodySource of the pack.
+	 * @return the List of header-only Recipes in pack order.
+	 */
+	static List<Recipe> readHeaders(ByteBuffer buffer, BodySource bodySource) {
+		RecipeList result = new RecipeList();
+
+		try {
+			readHeaders(buffer, bodySource, result);
+		} catch (InterruptedException e) {
+			// a List never blocks
+			Thread.currentThread().interrupt();
+		}
+
+		return result;
+	}
+
+	/**
+	 * Reads Recipe headers from a binary recipe pack whose BodySource has already been read, passing each Recipe to the sink as soon as its header is decoded.
+	 * @param buffer the pack contents, positioned at the record section as left by readBodySource().
+	 * @param bodySource the BodySource of the pack.
+	 * @param sink the destination of the header-only Recipes, in pack order.
+	 * @throws InterruptedException if interrupted while the sink is full.
+	 */
+	static void readHeaders(ByteBuffer buffer, BodySource bodySource, RecipeSink sink) throws InterruptedException {
+		int recipeCount = bodySource.recipeCount;
+
+		// RECORD HEADERS
+		for (int i = 0; i < recipeCount; i++) {
+			int recipeId = buffer.getInt();
+			String name = bodySource.headerString(buffer.getInt());
+			String author = bodySource.headerString(buffer.getInt());
+			RecipeTime recipeTime = new RecipeTime(buffer.getShort(), buffer.getShort(), buffer.getShort());
+			byte numOfServings = buffer.get();
+
+			int boxCount = buffer.getShort();
+			List<Short> boxes = new ArrayList<Short>(boxCount);
+			for (int j = 0; j < boxCount; j++)
+				boxes.add(buffer.getShort());
+
+			int linkedCount = buffer.getShort();
+			List<Integer> linkedRecipes = new ArrayList<Integer>(linkedCount);
+			for (int j = 0; j < linkedCount; j++)
+				linkedRecipes.add(buffer.getInt());
+
+			// body starts here, keep only the ingredient names
+			int bodyOffset = buffer.position();
+
+			int ingredientCount = buffer.getShort();
+			List<String> ingredientNames = new ArrayList<String>(ingredientCount);
+			for (int j = 0; j < ingredientCount; j++) {
+				ingredientNames.add(bodySource.headerString(buffer.getInt(buffer.position() + 8)));
+				buffer.position(buffer.position() + 16);
+			}
+
+			int directionCount = buffer.getShort();
+			buffer.position(buffer.position() + directionCount * 4);
+
+			sink.accept(new Recipe(recipeId, name, author, ingredientNames, linkedRecipes, boxes, recipeTime, numOfServings, bodySource, bodyOffset));
+		}
+	}
+
+	/**
+	 * Reads the pack header and string table offsets, creating the BodySource for header-only Recipes of this pack.
+	 * @param buffer the pack contents, positioned at the start of the pack; left positioned at the record section.
+	 * @return the BodySource of the pack, or null if the buffer is not a recipe pack of the current version.
+	 */
+	static BodySource readBodySource(ByteBuffer buffer) {
+		// HEADER
+		if (!readMagic(buffer))
+			return null;
+
+		buffer.getLong(); // source checksum
+		int recipeCount = buffer.getInt();
+		int stringCount = buffer.getInt();
+
+		// STRING TABLE, only the offsets are recorded, entries are decoded when used
+		int[] stringOffsets = new int[stringCount];
+		for (int i = 0; i < stringCount; i++) {
+			stringOffsets[i] = buffer.position();
+			buffer.position(buffer.position() + 4 + buffer.getInt(buffer.position()));
+		}
+
+		return new BodySource(buffer, recipeCount, stringOffsets);
+	}
+
+	/**
+	 * Returns the CRC32 checksum of the whole buffer, used to detect when derived data is out of date: a snapshot built from the pack, or the pack compiled from a text file.
+	 * @param buffer the pack or text file contents; its position is not modified.
+	 * @return the checksum of the contents.
+	 */
+	static long checksum(ByteBuffer buffer) {
+		CRC32 crc = new CRC32();
+		ByteBuffer view = buffer.duplicate();
+		view.rewind();
+
+		byte[] chunk = new byte[8192];
+		while (view.hasRemaining()) {
+			int n = Math.min(chunk.length, view.remaining());
+			view.get(chunk, 0, n);
+			crc.update(chunk, 0, n);
+		}
+
+		return crc.getValue();
+	}
+
+	/**
+	 * Returns the number of Recipes in a binary recipe pack without reading them.
+	 * @param buffer the pack contents, positioned at the start of the pack; its position is not modified.
+	 * @return the number of Recipes, or -1 if the buffer is not a recipe pack of the current version.
+	 */
+	static int recipeCount(ByteBuffer buffer) {
+		ByteBuffer view = buffer.duplicate();
+
+		if (!readMagic(view))
+			return -1;
+
+		view.getLong(); // source checksum
+		return view.getInt();
+	}
+
+	/**
+	 * Helper function which reads and checks the pack magic number and version.
+	 * @param buffer the pack contents, positioned at the start of the pack.
+	 * @return true if the buffer holds a recipe pack of the current version, false otherwise.
+	 */
+	private static boolean readMagic(ByteBuffer buffer) {
+		return buffer.remaining() >= HEADER_SIZE && buffer.getInt() == MAGIC && buffer.getShort() == VERSION;
+	}
+
+	/**
+	 * Helper function which decodes UTF-8 bytes into a String.
+	 * @param bytes the byte array holding the encoded String.
+	 * @param offset the index of the first byte.
+	 * @param length the number of bytes.
+	 * @return the decoded String.
+	 */
+	static String decode(byte[] bytes, int offset, int length) {
+		try {
+			return new String(bytes, offset, length, UTF_8);
+		} catch (UnsupportedEncodingException e) {
+			// every Java platform supports UTF-8
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Helper function which reads all remaining bytes of a stream into a direct ByteBuffer.
+	 * @param in the InputStream to read.
+	 * @return a direct ByteBuffer containing the stream contents, positioned at 0.
+	 * @throws IOException if the stream cannot be read.
+	 */
+	static ByteBuffer readFully(InputStream in) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(Math.max(in.available(), 8192));
+		byte[] chunk = new byte[8192];
+		int n;
+		while ((n = in.read(chunk)) != -1)
+			bytes.write(chunk, 0, n);
+
+		ByteBuffer result = ByteBuffer.allocateDirect(bytes.size());
+		result.put(bytes.toByteArray());
+		result.flip();
+
+		return result;
+	}
+
+	/**
+	 * Helper function which reads one recipe record.
+	 * @param buffer the pack contents, positioned at the start of the record.
+	 * @param strings the decoded string table.
+	 * @return the Recipe.
+	 */
+	private static Recipe readRecipe(ByteBuffer buffer, String[] strings) {
+		int recipeId = buffer.getInt();
+		String name = strings[buffer.getInt()];
+		String author = strings[buffer.getInt()];
+		RecipeTime recipeTime = new RecipeTime(buffer.getShort(), buffer.getShort(), buffer.getShort());
+		byte numOfServings = buffer.get();
+
+		int boxCount = buffer.getShort();
+		List<Short> boxes = new ArrayList<Short>(boxCount);
+		for (int i = 0; i < boxCount; i++)
+			boxes.add(buffer.getShort());
+
+		int linkedCount = buffer.getShort();
+		List<Integer> linkedRecipes = new ArrayList<Integer>(linkedCount);
+		for (int i = 0; i < linkedCount; i++)
+			linkedRecipes.add(buffer.getInt());
+
+		int ingredientCount = buffer.getShort();
+		List<RecipeIngredient> ingredients = new ArrayList<RecipeIngredient>(ingredientCount);
+		for (int i = 0; i < ingredientCount; i++)
+			ingredients.add(new RecipeIngredient(strings[buffer.getInt()], strings[buffer.getInt()], strings[buffer.getInt()], strings[buffer.getInt()]));
+
+		int directionCount = buffer.getShort();
+		List<RecipeDirection> directions = new ArrayList<RecipeDirection>(directionCount);
+		for (int i = 0; i < directionCount; i++)
+			directions.add(new RecipeDirection(strings[buffer.getInt()]));
+
+		return new Recipe(recipeId, name, author, ingredients, directions, linkedRecipes, boxes, recipeTime, numOfServings);
+	}
+
+	/**
+	 * Writes Recipes as a binary recipe pack.
+	 * @param recipes the List of Recipes to write, in load order.
+	 * @param sourceChecksum the checksum of the text file the Recipes were parsed from, as returned by checksum().
+	 * @param out the OutputStream to write the pack to.
+	 * @throws IOException if the pack cannot be written.
+	 */
+	static void write(List<Recipe> recipes, long sourceChecksum, OutputStream out) throws IOException {
+		Map<String, Integer> stringIndex = new HashMap<String, Integer>();
+		List<String> strings = new ArrayList<String>();
+
+		// RECORDS, built first so the string table is complete
+		ByteArrayOutputStream recordBytes = new ByteArrayOutputStream();
+		DataOutputStream records = new DataOutputStream(recordBytes);
+
+		for (Recipe recipe : recipes) {
+			records.writeInt(recipe.recipeId);
+			records.writeInt(intern(recipe.name, stringIndex, strings));
+			records.writeInt(intern(recipe.author, stringIndex, strings));
+			records.writeShort(recipe.recipeTime.prepTimeInMin);
+			records.writeShort(recipe.recipeTime.inactivePrepTimeInMin);
+			records.writeShort(recipe.recipeTime.cookTimeInMin);
+			records.writeByte(recipe.numOfServings);
+
+			records.writeShort(count(recipe.boxes.size()));
+			for (short boxId : recipe.boxes)
+				records.writeShort(boxId);
+
+			records.writeShort(count(recipe.linkedRecipes.size()));
+			for (int linkedId : recipe.linkedRecipes)
+				records.writeInt(linkedId);
+
+			List<RecipeIngredient> ingredients = recipe.getIngredients();
+			records.writeShort(count(ingredients.size()));
+			for (RecipeIngredient ri : ingredients) {
+				records.writeInt(intern(ri.amount, stringIndex, strings));
+				records.writeInt(intern(ri.measurement, stringIndex, strings));
+				records.writeInt(intern(ri.ingredientName, stringIndex, strings));
+				records.writeInt(intern(ri.notes, stringIndex, strings));
+			}
+
+			List<RecipeDirection> directions = recipe.getDirections();
+			records.writeShort(count(directions.size()));
+			for (RecipeDirection rd : directions)
+				records.writeInt(intern(rd.direction, stringIndex, strings));
+		}
+		records.flush();
+
+		// HEADER
+		DataOutputStream data = new DataOutputStream(out);
+		data.writeInt(MAGIC);
+		data.writeShort(VERSION);
+		data.writeLong(sourceChecksum);
+		data.writeInt(recipes.size());
+		data.writeInt(strings.size());
+
+		// STRING TABLE
+		for (String s : strings) {
+			byte[] bytes = s.getBytes(UTF_8);
+			data.writeInt(bytes.length);
+			data.write(bytes);
+		}
+
+		// RECORD SECTION
+		recordBytes.writeTo(data);
+		data.flush();
+	}
+
+	/**
+	 * Helper function which checks that a list length fits in a record count field.
+	 * @param count the list length.
+	 * @return the list length.
+	 */
+	private static int count(int count) {
+		if (count > Short.MAX_VALUE)
+			throw new IllegalArgumentException("list too long for recipe pack: " + count);
+
+		return count;
+	}
+
+	/**
+	 * Helper function which returns the string table index of a String, adding it to the table if new.
+	 * @param string the String to look up, null is stored as the empty String.
+	 * @param stringIndex maps each String to its string table index.
+	 * @param strings the string table, in index order.
+	 * @return the string table index.
+	 */
+	private static int intern(String string, Map<String, Integer> stringIndex, List<String> strings) {
+		if (string == null)
+			string = "";
+
+		Integer index = stringIndex.get(string);
+		if (index == null) {
+			index = strings.size();
+			stringIndex.put(string, index);
+			strings.add(string);
+		}
+
+		return index;
+	}
+}
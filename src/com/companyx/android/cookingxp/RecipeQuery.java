@@ -0,0 +1,467 @@
+package com.companyx.android.cookingxp;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Recipe Query
+ *
+ * Boolean search query over the search index, parsed from a query String such as "chicken -bacon (rice OR noodles)".
+ * Words are analyzed like the indexed words, so a query without operators matches the same recipes as searchRecipes().
+ *
+ * SYNTAX:
+ * chicken rice: recipes containing both words, AND between them is optional
+ * rice OR noodles: recipes containing either word; OR binds looser than AND, so "chicken rice OR noodles" means "(chicken rice) OR noodles"
+ * -bacon, NOT bacon: leaves out the recipes containing the word from what the rest of its group matches; a query of exclusions alone matches nothing
+ * chicken (rice OR -garlic): a group of exclusions alone is unbounded, and applies to what the rest of its enclosing group matches, here chicken with rice or without garlic
+ * (rice OR noodles): groups words
+ * Operators are only recognized in capitals, as "and", "or" and "not" are ordinary search words.
+ * Parsing never fails: unbalanced parentheses are closed or ignored, and stop words and empty groups are dropped.
+ *
+ * PLANNING:
+ * The query is parsed into a tree of AND and OR groups over words, and evaluated as PostingList operations ordered by estimated matches, taken from PostingList sizes:
+ * - a word is estimated at its document frequency, an AND group at its smallest part, an OR group at the sum of its parts, and exclusions alone are unbounded
+ * - the parts of an AND group are intersected smallest first, and evaluation stops as soon as nothing is left
+ * - every part is evaluated within the matches of the parts before it, so an OR group inside an AND group unites its words' intersections with those matches, never the words' whole PostingLists
+ * - exclusions are subtracted last, once the fewest recipes are left, largest first
+ * As intersection and subtraction gallop through the longer PostingList, a query costs about as much as its most selective part, however broad its other words are.
+ *
+ * USAGE:
+ * RecipeQuery query = new RecipeQuery("chicken -bacon (rice OR noodles)");
+ * PostingList matches = query.match(indexMap);
+ *
+ * @author James Chin <jameslchin@gmail.com>
+ */
+final class RecipeQuery {
+	// CONSTANTS
+	private static final String AND = "AND";
+	private static final String OR = "OR";
+	private static final String NOT = "NOT";
+	private static final String EXCLUDE = "-";
+	private static final String OPEN = "(";
+	private static final String CLOSE = ")";
+	private static final long UNBOUNDED = Long.MAX_VALUE; // estimate of a group of exclusions alone, evaluated last
+
+	/**
+	 * Orders nodes by their String form, so equal queries share one String form regardless of word order.
+	 */
+	private static final Comparator<Node> BY_STRING = new Comparator<Node>() {
+		@Override
+		public int compare(Node a, Node b) {
+			return a.toString().compareTo(b.toString());
+		}
+	};
+
+	/**
+	 * Node of the query tree.
+	 */
+	private abstract static class Node {
+		/**
+		 * Returns an upper bound of the number of matching recipes.
+		 * @param indexMap maps search word to PostingList of recipeId's.
+		 * @return the estimated number of matches.
+		 */
+		abstract long estimate(Map<String, PostingList> indexMap);
+
+		/**
+		 * Returns the recipes matching the node among the specified recipes.
+		 * @param indexMap maps search word to PostingList of recipeId's.
+		 * @param within the PostingList of recipeId's to match within, null for all recipes.
+		 * @return the PostingList of matching recipeId's, null if no recipe matches.
+		 */
+		abstract PostingList match(Map<String, PostingList> indexMap, PostingList within);
+
+		/**
+		 * Adds the words of the node to a Set.
+		 * @param words the Set to add to.
+		 */
+		abstract void addWords(Set<String> words);
+	}
+
+	/**
+	 * A search word, matching the recipes containing it.
+	 */
+	private static final class Word extends Node {
+		final String word;
+
+		Word(String word) {
+			this.word = word;
+		}
+
+		@Override
+		long estimate(Map<String, PostingList> indexMap) {
+			PostingList postings = indexMap.get(word);
+
+			return (postings == null) ? 0 : postings.size();
+		}
+
+		@Override
+		PostingList match(Map<String, PostingList> indexMap, PostingList within) {
+			PostingList postings = indexMap.get(word);
+			if (postings == null || within == null)
+				return postings;
+
+			PostingList result = within.intersect(postings);
+			return result.isEmpty() ? null : result;
+		}
+
+		@Override
+		void addWords(Set<String> words) {
+			words.add(word);
+		}
+
+		@Override
+		public String toString() {
+			return word;
+		}
+	}
+
+	/**
+	 * An AND group, matching the recipes matching all of its parts and none of its exclusions.
+	 */
+	private static final class And extends Node {
+		final Node[] parts;
+		final Node[] exclusions;
+
+		And(List<Node> parts, List<Node> exclusions) {
+			this.parts = parts.toArray(new Node[parts.size()]);
+			this.exclusions = exclusions.toArray(new Node[exclusions.size()]);
+			Arrays.sort(this.parts, BY_STRING);
+			Arrays.sort(this.exclusions, BY_STRING);
+		}
+
+		@Override
+		long estimate(Map<String, PostingList> indexMap) {
+			long result = UNBOUNDED;
+			for (Node part : parts)
+				result = Math.min(result, part.estimate(indexMap));
+
+			return result;
+		}
+
+		@Override
+		PostingList match(Map<String, PostingList> indexMap, PostingList within) {
+			// exclusions alone leave out recipes from nothing
+			if (parts.length == 0 && within == null)
+				return null;
+
+			// INTERSECT from the smallest part upwards, each part only evaluated within the matches so far
+			PostingList result = within;
+			for (Node part : plan(parts, indexMap, true)) {
+				result = part.match(indexMap, result);
+				if (result == null)
+					return null;
+			}
+
+			// SUBTRACT the exclusions last, from the fewest matches, the largest exclusion first as it leaves the least for the others
+			for (Node exclusion : plan(exclusions, indexMap, false)) {
+				PostingList excluded = exclusion.match(indexMap, result);
+				if (excluded == null)
+					continue;
+
+				result = result.subtract(excluded);
+				if (result.isEmpty())
+					return null;
+			}
+
+			return result;
+		}
+
+		@Override
+		void addWords(Set<String> words) {
+			for (Node part : parts)
+				part.addWords(words);
+			for (Node exclusion : exclusions)
+				exclusion.addWords(words);
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder result = new StringBuilder("(");
+			for (Node part : parts)
+				result.append((result.length() > 1) ? " " : "").append(part);
+			for (Node exclusion : exclusions)
+				result.append((result.length() > 1) ? " -" : "-").append(exclusion);
+
+			return result.append(')').toString();
+		}
+	}
+
+	/**
+	 * An OR group, matching the recipes matching any of its alternatives.
+	 */
+	private static final class Or extends Node {
+		final Node[] alternatives;
+
+		Or(List<Node> alternatives) {
+			this.alternatives = alternatives.toArray(new Node[alternatives.size()]);
+			Arrays.sort(this.alternatives, BY_STRING);
+		}
+
+		@Override
+		long estimate(Map<String, PostingList> indexMap) {
+			long result = 0;
+			for (Node alternative : alternatives) {
+				long estimate = alternative.estimate(indexMap);
+				result = (estimate > UNBOUNDED - result) ? UNBOUNDED : result + estimate;
+			}
+
+			return result;
+		}
+
+		@Override
+		PostingList match(Map<String, PostingList> indexMap, PostingList within) {
+			PostingList result = null;
+
+			for (Node alternative : alternatives) {
+				PostingList matches = alternative.match(indexMap, within);
+				if (matches != null)
+					result = (result == null) ? matches : result.union(matches);
+			}
+
+			return result;
+		}
+
+		@Override
+		void addWords(Set<String> words) {
+			for (Node alternative : alternatives)
+				alternative.addWords(words);
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder result = new StringBuilder("(");
+			for (Node alternative : alternatives)
+				result.append((result.length() > 1) ? " OR " : "").append(alternative);
+
+			return result.append(')').toString();
+		}
+	}
+
+	// STATE VARIABLES
+	private final Node root; // null if the query has no search words
+	private List<String> tokens; // tokens of the query String while parsing
+	private int position; // index of the next token while parsing
+
+	/**
+	 * Constructor, parses a query String.
+	 * @param query the query String.
+	 */
+	RecipeQuery(String query) {
+		tokens = tokenize(query);
+		Node node = parseOr();
+
+		// a closing parenthesis without opening one ends parseOr() early, skip it and AND what follows
+		while (position < tokens.size()) {
+			position++;
+			Node next = parseOr();
+			if (node == null || next == null)
+				node = (node == null) ? next : node;
+			else
+				node = new And(Arrays.asList(node, next), Collections.<Node>emptyList());
+		}
+
+		root = node;
+		tokens = null;
+	}
+
+	/**
+	 * Returns the recipes matching the query.
+	 * @param indexMap maps search word to PostingList of recipeId's, holding at least the words of the query that match any recipe.
+	 * @return the PostingList of matching recipeId's, null if no recipe matches.
+	 */
+	PostingList match(Map<String, PostingList> indexMap) {
+		if (root == null)
+			return null;
+
+		PostingList result = root.match(indexMap, null);
+		return (result == null || result.isEmpty()) ? null : result;
+	}
+
+	/**
+	 * Returns the search words of the query, both those to match and those to leave out.
+	 * @return the analyzed search words.
+	 */
+	Set<String> words() {
+		Set<String> result = new TreeSet<String>();
+		if (root != null)
+			root.addWords(result);
+
+		return result;
+	}
+
+	/**
+	 * Returns the normalized form of the query, with analyzed words, explicit groups and ordered parts, so equal queries have equal forms.
+	 * @return the normalized query.
+	 */
+	@Override
+	public String toString() {
+		return (root == null) ? "" : root.toString();
+	}
+
+	/**
+	 * Helper function which orders the nodes of a group by estimated matches.
+	 * @param nodes the nodes to order.
+	 * @param indexMap maps search word to PostingList of recipeId's.
+	 * @param ascending true for the smallest estimate first, false for the largest first.
+	 * @return the nodes in evaluation order.
+	 */
+	private static Node[] plan(Node[] nodes, Map<String, PostingList> indexMap, final boolean ascending) {
+		if (nodes.length < 2)
+			return nodes;
+
+		// estimate every node once
+		final long[] estimates = new long[nodes.length];
+		Integer[] order = new Integer[nodes.length];
+		for (int i = 0; i < nodes.length; i++) {
+			estimates[i] = nodes[i].estimate(indexMap);
+			order[i] = i;
+		}
+
+		Arrays.sort(order, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer a, Integer b) {
+				long estimateA = estimates[ascending ? a : b];
+				long estimateB = estimates[ascending ? b : a];
+				return (estimateA < estimateB) ? -1 : ((estimateA == estimateB) ? 0 : 1);
+			}
+		});
+
+		Node[] result = new Node[nodes.length];
+		for (int i = 0; i < nodes.length; i++)
+			result[i] = nodes[order[i]];
+
+		return result;
+	}
+
+	/**
+	 * Helper function which splits a query String into words, parentheses and exclusion signs.
+	 * A minus sign only excludes when it starts a word or group, i.e. "-bacon" but not "sugar-free".
+	 * @param query the query String.
+	 * @return the tokens in query order.
+	 */
+	private static List<String> tokenize(String query) {
+		List<String> result = new ArrayList<String>();
+		int length = query.length();
+
+		int i = 0;
+		while (i < length) {
+			char c = query.charAt(i);
+			if (Character.isWhitespace(c)) {
+				i++;
+			} else if (c == '(' || c == ')') {
+				result.add(String.valueOf(c));
+				i++;
+			} else if (c == '-') {
+				// a minus sign followed by a space excludes nothing
+				if (i + 1 < length && !Character.isWhitespace(query.charAt(i + 1)))
+					result.add(EXCLUDE);
+				i++;
+			} else {
+				int start = i;
+				while (i < length && !Character.isWhitespace(query.charAt(i)) && query.charAt(i) != '(' && query.charAt(i) != ')')
+					i++;
+				result.add(query.substring(start, i));
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Helper function which parses alternatives separated by OR.
+	 * @return the parsed node, null if it has no search words.
+	 */
+	private Node parseOr() {
+		List<Node> alternatives = new ArrayList<Node>();
+
+		do {
+			Node alternative = parseAnd();
+			if (alternative != null)
+				alternatives.add(alternative);
+		} while (accept(OR));
+
+		if (alternatives.size() < 2)
+			return alternatives.isEmpty() ? null : alternatives.get(0);
+
+		return new Or(alternatives);
+	}
+
+	/**
+	 * Helper function which parses parts and exclusions up to the next OR, closing parenthesis or the end of the query.
+	 * @return the parsed node, null if it has no search words.
+	 */
+	private Node parseAnd() {
+		List<Node> parts = new ArrayList<Node>();
+		List<Node> exclusions = new ArrayList<Node>();
+
+		while (position < tokens.size() && !tokens.get(position).equals(OR) && !tokens.get(position).equals(CLOSE)) {
+			if (accept(AND))
+				continue;
+
+			boolean excluded = false;
+			while (accept(NOT) || accept(EXCLUDE))
+				excluded = true;
+
+			Node node = parsePrimary();
+			if (node != null)
+				(excluded ? exclusions : parts).add(node);
+		}
+
+		if (parts.size() == 1 && exclusions.isEmpty())
+			return parts.get(0);
+		if (parts.isEmpty() && exclusions.isEmpty())
+			return null;
+
+		return new And(parts, exclusions);
+	}
+
+	/**
+	 * Helper function which parses a parenthesized group or a word; a word analyzed into several search words is a group of them.
+	 * @return the parsed node, null if it has no search words.
+	 */
+	private Node parsePrimary() {
+		if (position == tokens.size())
+			return null;
+
+		if (accept(OPEN)) {
+			Node node = parseOr();
+			accept(CLOSE);
+			return node;
+		}
+
+		String token = tokens.get(position);
+		if (token.equals(OR) || token.equals(CLOSE))
+			return null;
+		position++;
+
+		List<Node> words = new ArrayList<Node>();
+		for (String word : new TreeSet<String>(TextAnalyzer.analyze(token)))
+			words.add(new Word(word));
+
+		if (words.size() < 2)
+			return words.isEmpty() ? null : words.get(0);
+
+		return new And(words, Collections.<Node>emptyList());
+	}
+
+	/**
+	 * Helper function which moves past the next token if it is the expected one.
+	 * @param expected the expected token.
+	 * @return true if the token was the expected one, false otherwise.
+	 */
+	private boolean accept(String expected) {
+		if (position < tokens.size() && tokens.get(position).equals(expected)) {
+			position++;
+			return true;
+		}
+
+		return false;
+	}
+}
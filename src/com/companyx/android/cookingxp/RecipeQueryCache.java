@@ -0,0 +1,167 @@
+package com.companyx.android.cookingxp;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.companyx.android.cookingxp.RecipeDatabase.Recipe;
+
+/**
+ * Recipe Query Cache
+ *
+ * Bounded cache of query results of RecipeDatabase, so returning to a list, e.g. on Activity restart, does not run the same query again.
+ * Results are keyed on the normalized query and evicted least recently used first.
+ * Every change to the data behind the results, such as unlocking Recipes or editing favorites, increments the version; results cached under an older version are dropped when next looked up.
+ * Cached results are unmodifiable, as they are shared by every caller of the same query.
+ * Paged queries cache only their matching recipeId's and count, from which each page is sorted on demand, so paging never builds the List of the whole result.
+ *
+ * @author James Chin <jameslchin@gmail.com>
+ */
+final class RecipeQueryCache {
+	// CONSTANTS
+	static final int DEFAULT_CAPACITY = 32;
+
+	/**
+	 * The unlocked recipeId's matching a paged query, and their number.
+	 */
+	static final class Matches {
+		final RecipeBitSet recipeIds; // never modified once cached
+		final int count;
+
+		Matches(RecipeBitSet recipeIds) {
+			this.recipeIds = recipeIds;
+			this.count = recipeIds.cardinality();
+		}
+	}
+
+	/**
+	 * A cached result and the version it was computed at, either the Recipes of a list query or the Matches of a paged query.
+	 */
+	private static final class Entry {
+		final List<Recipe> recipes; // null for a paged query
+		final Matches matches; // null for a list query
+		final int version;
+
+		Entry(List<Recipe> recipes, Matches matches, int version) {
+			this.recipes = recipes;
+			this.matches = matches;
+			this.version = version;
+		}
+	}
+
+	// STATE VARIABLES
+	private final Map<String, Entry> entries;
+	private int version;
+	private int hits;
+	private int misses;
+
+	/**
+	 * Constructor.
+	 * @param capacity the largest number of cached results.
+	 */
+	RecipeQueryCache(final int capacity) {
+		// access order, so the eldest entry is the least recently used
+		entries = new LinkedHashMap<String, Entry>(capacity * 4 / 3 + 1, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+				return size() > capacity;
+			}
+		};
+	}
+
+	/**
+	 * Returns the cached result of a query, counting a hit or a miss.
+	 * @param key the normalized query.
+	 * @return the cached result, null if there is none for the current version.
+	 */
+	synchronized List<Recipe> get(String key) {
+		Entry entry = lookup(key);
+
+		return (entry != null) ? entry.recipes : null;
+	}
+
+	/**
+	 * Returns the cached Matches of a paged query, counting a hit or a miss.
+	 * @param key the normalized query, distinct from the keys of list queries.
+	 * @return the cached Matches, null if there are none for the current version.
+	 */
+	synchronized Matches getMatches(String key) {
+		Entry entry = lookup(key);
+
+		return (entry != null) ? entry.matches : null;
+	}
+
+	/**
+	 * Returns the number of lookups answered from the cache.
+	 * @return the number of hits.
+	 */
+	synchronized int getHits() {
+		return hits;
+	}
+
+	/**
+	 * Returns the number of lookups not answered from the cache.
+	 * @return the number of misses.
+	 */
+	synchronized int getMisses() {
+		return misses;
+	}
+
+	/**
+	 * Marks all cached results as outdated, after a change to the data behind them.
+	 */
+	synchronized void invalidate() {
+		version++;
+	}
+
+	/**
+	 * Helper function which returns the entry of a query cached under the current version, dropping an outdated one and counting a hit or a miss.
+	 * @param key the normalized query.
+	 * @return the entry, null if there is none for the current version.
+	 */
+	private Entry lookup(String key) {
+		Entry entry = entries.get(key);
+
+		if (entry != null && entry.version != version) {
+			entries.remove(key);
+			entry = null;
+		}
+
+		if (entry == null) {
+			misses++;
+			return null;
+		}
+
+		hits++;
+		return entry;
+	}
+
+	/**
+	 * Caches the result of a query under the current version.
+	 * @param key the normalized query.
+	 * @param recipes the result of the query.
+	 * @return the cached, unmodifiable result.
+	 */
+	synchronized List<Recipe> put(String key, List<Recipe> recipes) {
+		List<Recipe> result = Collections.unmodifiableList(recipes);
+		entries.put(key, new Entry(result, null, version));
+
+		return result;
+	}
+
+	/**
+	 * Caches the matching recipeId's of a paged query under the current version.
+	 * @param key the normalized query, distinct from the keys of list queries.
+	 * @param recipeIds the unlocked recipeId's matching the query, no longer modified by the caller.
+	 * @return the cached Matches.
+	 */
+	synchronized Matches putMatches(String key, RecipeBitSet recipeIds) {
+		Matches result = new Matches(recipeIds);
+		entries.put(key, new Entry(null, result, version));
+
+		return result;
+	}
+}
@@ -0,0 +1,212 @@
+package com.companyx.android.cookingxp;
+
+import java.util.Arrays;
+
+/**
+ * Recipe Ranker
+ *
+ * Scores the Recipes matching a search by relevance with BM25F, and selects the best ones with a bounded heap.
+ * Every search term adds idf * tf / (K1 + tf) to the score of a Recipe, where idf favors rare terms and the saturating tf favors Recipes using the term often, with diminishing returns.
+ * The term frequency combines the fields of the Recipe: a term in the name counts NAME_WEIGHT times as much as one in the ingredient names, and each field's count is normalized by the field length relative to its average, so a term in a short name outweighs the same term in a long one.
+ *
+ * TERM STATISTICS, gathered at index time:
+ * document frequency: the size of the term's PostingList in the search index
+ * name hits: the Recipes with the term in the name
+ * repeated hits: the Recipes with the term more than once in the name and ingredient names together, so the term frequency is known up to 2
+ * field lengths: the name and ingredient term counts of each Recipe in RecipeColumns, with their totals for the averages
+ *
+ * Only the best limit Recipes are kept in a min-heap while scoring, so ranking costs one pass over the matches and never sorts all of them.
+ * Equally relevant Recipes are ordered by name.
+ *
+ * USAGE:
+ * RecipeRanker ranker = new RecipeRanker(matches, candidates, recipeColumns, recipeCount);
+ * ranker.addTerm(documentFrequency, nameHits, repeatedHits); (once per search term)
+ * int[] best = ranker.top(limit);
+ *
+ * @author James Chin <jameslchin@gmail.com>
+ */
+final class RecipeRanker {
+	// CONSTANTS
+	static final float K1 = 1.2f; // term frequency saturation
+	static final float NAME_WEIGHT = 3.0f; // weight of a name hit relative to an ingredient hit
+	static final float NAME_B = 0.5f; // strength of the name length normalization, names vary less in length than ingredient lists
+	static final float INGREDIENT_B = 0.75f; // strength of the ingredient length normalization
+
+	// FIELD HIT FLAGS
+	private static final byte NAME_HIT = 1;
+	private static final byte REPEATED_HIT = 2;
+
+	// STATE VARIABLES
+	private final PostingList matches;
+	private final int[] candidates; // ascending recipeId's of the Recipes to rank
+	private final float[] scores; // score of each candidate
+	private final byte[] hits; // field hit flags of each candidate for the current term
+	private final float[] nameNorms; // length normalization of each candidate's name
+	private final float[] ingredientNorms; // length normalization of each candidate's ingredient names
+	private final int[] nameRanks; // name rank of each candidate, for ties
+	private final int recipeCount;
+
+	/**
+	 * Constructor.
+	 * @param matches the PostingList of all recipeId's matching the search.
+	 * @param candidates the ascending recipeId's of the matching Recipes to rank, loaded and a subset of matches.
+	 * @param recipeColumns the columns holding the field lengths and name ranks of the candidates.
+	 * @param recipeCount the number of loaded Recipes.
+	 */
+	RecipeRanker(PostingList matches, int[] candidates, RecipeColumns recipeColumns, int recipeCount) {
+		this.matches = matches;
+		this.candidates = candidates;
+		this.recipeCount = recipeCount;
+		scores = new float[candidates.length];
+		hits = new byte[candidates.length];
+		nameNorms = new float[candidates.length];
+		ingredientNorms = new float[candidates.length];
+		nameRanks = new int[candidates.length];
+
+		// field lengths are the same for every term, normalize once
+		float averageNameLength = Math.max(1f, (float) recipeColumns.nameTermTotal() / Math.max(1, recipeCount));
+		float averageIngredientLength = Math.max(1f, (float) recipeColumns.ingredientTermTotal() / Math.max(1, recipeCount));
+		for (int i = 0; i < candidates.length; i++) {
+			int recipeId = candidates[i];
+			nameNorms[i] = 1 - NAME_B + NAME_B * recipeColumns.nameTermCount(recipeId) / averageNameLength;
+			ingredientNorms[i] = 1 - INGREDIENT_B + INGREDIENT_B * recipeColumns.ingredientTermCount(recipeId) / averageIngredientLength;
+			nameRanks[i] = recipeColumns.nameRank(recipeId);
+		}
+	}
+
+	/**
+	 * Adds the score of a search term to every candidate; every candidate is expected to contain the term.
+	 * @param documentFrequency the number of Recipes containing the term.
+	 * @param nameHits the PostingList of Recipes with the term in the name, null if there are none.
+	 * @param repeatedHits the PostingList of Recipes with the term more than once, null if there are none.
+	 */
+	void addTerm(int documentFrequency, PostingList nameHits, PostingList repeatedHits) {
+		Arrays.fill(hits, (byte) 0);
+		markHits(nameHits, NAME_HIT);
+		markHits(repeatedHits, REPEATED_HIT);
+
+		float idf = (float) Math.log(1 + (recipeCount - documentFrequency + 0.5) / (documentFrequency + 0.5));
+
+		for (int i = 0; i < candidates.length; i++) {
+			// split the term frequency, 1 or at least 2, between the fields
+			boolean inName = (hits[i] & NAME_HIT) != 0;
+			boolean repeated = (hits[i] & REPEATED_HIT) != 0;
+			int nameFrequency = inName ? 1 : 0;
+			int ingredientFrequency = (repeated ? 2 : 1) - nameFrequency;
+
+			float tf = NAME_WEIGHT * nameFrequency / nameNorms[i] + ingredientFrequency / ingredientNorms[i];
+			scores[i] += idf * tf / (K1 + tf);
+		}
+	}
+
+	/**
+	 * Returns the best candidates, highest score first and in name order among equal scores.
+	 * @param limit the largest number of Recipes to return.
+	 * @return the recipeId's of the best candidates, at most limit.
+	 */
+	int[] top(int limit) {
+		if (limit <= 0)
+			return new int[0];
+
+		// SELECT, min-heap of candidate indexes keyed on score, so its root is the weakest candidate kept
+		int[] heap = new int[Math.min(limit, candidates.length)];
+		int size = 0;
+		for (int i = 0; i < candidates.length; i++) {
+			if (size < heap.length) {
+				heap[size++] = i;
+				siftUp(heap, size - 1);
+			} else if (weaker(heap[0], i)) {
+				heap[0] = i;
+				siftDown(heap, size);
+			}
+		}
+
+		// ORDER, popping the weakest candidate last-to-first
+		int[] result = new int[size];
+		while (size > 0) {
+			result[size - 1] = candidates[heap[0]];
+			heap[0] = heap[--size];
+			siftDown(heap, size);
+		}
+
+		return result;
+	}
+
+	/**
+	 * Helper function which flags the candidates contained in a PostingList of field hits.
+	 * The hits are first intersected with the matches, so a common term costs the size of the matches rather than of its hits.
+	 * @param fieldHits the PostingList of field hits, may be null.
+	 * @param flag the flag to set.
+	 */
+	private void markHits(PostingList fieldHits, byte flag) {
+		if (fieldHits == null)
+			return;
+
+		// both arrays are ascending, merge them
+		int[] recipeIds = fieldHits.intersect(matches).toArray();
+		int i = 0;
+		for (int recipeId : recipeIds) {
+			while (i < candidates.length && candidates[i] < recipeId)
+				i++;
+			if (i == candidates.length)
+				break;
+			if (candidates[i] == recipeId)
+				hits[i] |= flag;
+		}
+	}
+
+	/**
+	 * Helper function which compares two candidates for the heap: the lower score first, and the later name first among equal scores.
+	 * @param a the index of one candidate.
+	 * @param b the index of the other candidate.
+	 * @return true if candidate a is weaker than candidate b.
+	 */
+	private boolean weaker(int a, int b) {
+		if (scores[a] != scores[b])
+			return scores[a] < scores[b];
+
+		return nameRanks[a] > nameRanks[b];
+	}
+
+	/**
+	 * Helper function which moves a heap entry up to its place.
+	 * @param heap the heap of candidate indexes.
+	 * @param i the index of the entry.
+	 */
+	private void siftUp(int[] heap, int i) {
+		while (i > 0) {
+			int parent = (i - 1) >>> 1;
+			if (!weaker(heap[i], heap[parent]))
+				break;
+
+			int swap = heap[i];
+			heap[i] = heap[parent];
+			heap[parent] = swap;
+			i = parent;
+		}
+	}
+
+	/**
+	 * Helper function which moves the heap root down to its place.
+	 * @param heap the heap of candidate indexes.
+	 * @param size the number of entries in the heap.
+	 */
+	private void siftDown(int[] heap, int size) {
+		int i = 0;
+
+		while (true) {
+			int child = 2 * i + 1;
+			if (child >= size)
+				break;
+			if (child + 1 < size && weaker(heap[child + 1], heap[child]))
+				child++;
+			if (!weaker(heap[child], heap[i]))
+				break;
+
+			int swap = heap[i];
+			heap[i] = heap[child];
+			heap[child] = swap;
+			i = child;
+		}
+	}
+}
@@ -0,0 +1,425 @@
+package com.companyx.android.cookingxp;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import android.content.Context;
+
+import com.companyx.android.cookingxp.RecipeDatabase.Recipe;
+import com.companyx.android.cookingxp.RecipeDatabase.RecipeBodySource;
+import com.companyx.android.cookingxp.RecipeDatabase.RecipeDirection;
+import com.companyx.android.cookingxp.RecipeDatabase.RecipeIngredient;
+import com.companyx.android.cookingxp.RecipeDatabase.RecipeTime;
+
+/**
+ * Recipe Database Snapshot
+ *
+ * Versioned image of the fully built RecipeDatabase state, stored in app-private storage so later starts can skip indexing.
+ * A snapshot is only valid for the source data it was built from, identified by a key derived from the source checksum.
+ *
+ * LAYOUT (big-endian):
+ * int magic, short version, long key, boolean headerOnly
+ * int recipeCount, recipeCount x recipe, recipeCount x (byte nameTermCount, short ingredientTermCount) in the same order
+ * search index, name index, repeated word index, each int termCount, termCount x (string term, PostingList in its serialized form)
+ * int vegetarianCount, vegetarianCount x int recipeId
+ * int boxCount, boxCount x (short boxId, int postingCount, postingCount x int recipeId)
+ *
+ * RECIPE:
+ * int recipeId, string name, string author, short prepTime, short inactivePrepTime, short cookTime, byte numOfServings
+ * short boxCount, boxCount x short boxId
+ * short linkedCount, linkedCount x int recipeId
+ * header-only: int bodyOffset, short ingredientNameCount, ingredientNameCount x string
+ * complete: short ingredientCount, ingredientCount x 4 string, short directionCount, directionCount x string
+ * Strings are stored as int byteLength followed by UTF-8 bytes.
+ *
+ * @author James Chin <jameslchin@gmail.com>
+ */
+final class RecipeSnapshot {
+	// CONSTANTS
+	static final String FILE_NAME = "recipe_database.snapshot";
+	static final int MAGIC = 0x43585053; // "CXPS"
+	static final short VERSION = 3;
+	private static final String UTF_8 = "UTF-8";
+
+	// RESTORED STATE
+	List<Recipe> recipes;
+	byte[] nameTermCounts; // in the order of recipes
+	short[] ingredientTermCounts; // in the order of recipes
+	Map<String, PostingList> indexMap;
+	Map<String, PostingList> nameIndexMap;
+	Map<String, PostingList> repeatedIndexMap;
+	RecipeBitSet vegetarianRecipes;
+	Map<Short, Set<Integer>> boxMap;
+
+	/**
+	 * Private constructor, use read().
+	 */
+	private RecipeSnapshot() {
+	}
+
+	/**
+	 * Reads the snapshot from app-private storage with a single bulk read.
+	 * @param context the calling context.
+	 * @param key the key of the current source data; the snapshot is ignored if it was written for a different key.
+	 * @param headerOnly true if header-only Recipes are expected, false for complete Recipes.
+	 * @param bodySource the RecipeBodySource for restored header-only Recipes, may be null for complete Recipes.
+	 * @return the restored state, or null if there is no valid snapshot for this key.
+	 */
+	static RecipeSnapshot read(Context context, long key, boolean headerOnly, RecipeBodySource bodySource) {
+		File file = context.getFileStreamPath(FILE_NAME);
+		if (!file.exists())
+			return null;
+
+		try {
+			ByteBuffer buffer = ByteBuffer.wrap(readFile(file));
+
+			// HEADER
+			if (buffer.getInt() != MAGIC || buffer.getShort() != VERSION || buffer.getLong() != key || (buffer.get() != 0) != headerOnly)
+				return null;
+
+			RecipeSnapshot result = new RecipeSnapshot();
+
+			// RECIPES
+			int recipeCount = buffer.getInt();
+			result.recipes = new ArrayList<Recipe>(recipeCount);
+			for (int i = 0; i < recipeCount; i++)
+				result.recipes.add(readRecipe(buffer, headerOnly, bodySource));
+
+			// TERM COUNTS
+			result.nameTermCounts = new byte[recipeCount];
+			result.ingredientTermCounts = new short[recipeCount];
+			for (int i = 0; i < recipeCount; i++) {
+				result.nameTermCounts[i] = buffer.get();
+				result.ingredientTermCounts[i] = buffer.getShort();
+			}
+
+			// SEARCH INDEXES
+			result.indexMap = readIndex(buffer);
+			result.nameIndexMap = readIndex(buffer);
+			result.repeatedIndexMap = readIndex(buffer);
+
+			// VEGETARIAN
+			result.vegetarianRecipes = readBitSet(buffer);
+
+			// BOXES
+			int boxCount = buffer.getInt();
+			result.boxMap = new HashMap<Short, Set<Integer>>(boxCount * 4 / 3 + 1);
+			for (int i = 0; i < boxCount; i++) {
+				short boxId = buffer.getShort();
+				result.boxMap.put(boxId, readPostings(buffer));
+			}
+
+			return result;
+		} catch (IOException e) {
+			e.printStackTrace();
+		} catch (RuntimeException e) {
+			// truncated or corrupt snapshot, rebuild
+			e.printStackTrace();
+			context.deleteFile(FILE_NAME);
+		}
+
+		return null;
+	}
+
+	/**
+	 * Writes the snapshot to app-private storage, replacing any previous snapshot only once the new one is complete.
+	 * @param context the calling context.
+	 * @param key the key of the source data the state was built from.
+	 * @param headerOnly true if the Recipes are header-only, in which case only their headers and body offsets are stored.
+	 * @param recipes all Recipes in the database.
+	 * @param recipeColumns the columns holding the term counts of the Recipes.
+	 * @param indexMap maps search word to PostingList of recipeId's.
+	 * @param nameIndexMap maps search word to PostingList of recipeId's with the word in the name.
+	 * @param repeatedIndexMap maps search word to PostingList of recipeId's with the word more than once.
+	 * @param vegetarianRecipes RecipeBitSet containing recipeId's of vegetarian recipes.
+	 * @param boxMap maps boxId to Set of recipeId's.
+	 * @throws IOException if the snapshot cannot be written.
+	 */
+	static void write(Context context, long key, boolean headerOnly, Collection<Recipe> recipes, RecipeColumns recipeColumns, Map<String, PostingList> indexMap,
+			Map<String, PostingList> nameIndexMap, Map<String, PostingList> repeatedIndexMap, RecipeBitSet vegetarianRecipes, Map<Short, Set<Integer>> boxMap) throws IOException {
+		String tempName = FILE_NAME + ".tmp";
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(context.openFileOutput(tempName, Context.MODE_PRIVATE)));
+
+		try {
+			// HEADER
+			out.writeInt(MAGIC);
+			out.writeShort(VERSION);
+			out.writeLong(key);
+			out.writeBoolean(headerOnly);
+
+			// RECIPES
+			out.writeInt(recipes.size());
+			for (Recipe recipe : recipes)
+				writeRecipe(out, recipe, headerOnly);
+
+			// TERM COUNTS
+			for (Recipe recipe : recipes) {
+				out.writeByte(recipeColumns.nameTermCount(recipe.recipeId));
+				out.writeShort(recipeColumns.ingredientTermCount(recipe.recipeId));
+			}
+
+			// SEARCH INDEXES
+			writeIndex(out, indexMap);
+			writeIndex(out, nameIndexMap);
+			writeIndex(out, repeatedIndexMap);
+
+			// VEGETARIAN
+			writePostings(out, vegetarianRecipes);
+
+			// BOXES
+			out.writeInt(boxMap.size());
+			for (Map.Entry<Short, Set<Integer>> entry : boxMap.entrySet()) {
+				out.writeShort(entry.getKey());
+				writePostings(out, entry.getValue());
+			}
+		} finally {
+			out.close();
+		}
+
+		if (!context.getFileStreamPath(tempName).renameTo(context.getFileStreamPath(FILE_NAME)))
+			throw new IOException("could not replace " + FILE_NAME);
+	}
+
+	/**
+	 * Helper function which reads a whole file with a single bulk read.
+	 * @param file the file to read.
+	 * @return the contents of the file.
+	 * @throws IOException if the file cannot be read.
+	 */
+	private static byte[] readFile(File file) throws IOException {
+		byte[] result = new byte[(int) file.length()];
+		InputStream in = new FileInputStream(file);
+
+		try {
+			int offset = 0;
+			while (offset < result.length) {
+				int n = in.read(result, offset, result.length - offset);
+				if (n < 0)
+					throw new IOException("unexpected end of " + file.getName());
+				offset += n;
+			}
+		} finally {
+			in.close();
+		}
+
+		return result;
+	}
+
+	/**
+	 * Helper function which reads a RecipeBitSet of recipeId's.
+	 * @param buffer the snapshot contents, positioned at the posting count.
+	 * @return the RecipeBitSet of recipeId's.
+	 */
+	private static RecipeBitSet readBitSet(ByteBuffer buffer) {
+		int count = buffer.getInt();
+		RecipeBitSet result = new RecipeBitSet();
+		for (int i = 0; i < count; i++)
+			result.set(buffer.getInt());
+
+		return result;
+	}
+
+	/**
+	 * Helper function which reads a search index.
+	 * @param buffer the snapshot contents, positioned at the term count.
+	 * @return a new Map of search word to PostingList of recipeId's.
+	 */
+	private static Map<String, PostingList> readIndex(ByteBuffer buffer) {
+		int termCount = buffer.getInt();
+		Map<String, PostingList> result = new HashMap<String, PostingList>(termCount * 4 / 3 + 1);
+		for (int i = 0; i < termCount; i++) {
+			String term = readString(buffer);
+			result.put(term, PostingList.read(buffer));
+		}
+
+		return result;
+	}
+
+	/**
+	 * Helper function which reads a Set of recipeId's.
+	 * @param buffer the snapshot contents, positioned at the posting count.
+	 * @return the Set of recipeId's.
+	 */
+	private static Set<Integer> readPostings(ByteBuffer buffer) {
+		int count = buffer.getInt();
+		Set<Integer> result = new HashSet<Integer>(count * 4 / 3 + 1);
+		for (int i = 0; i < count; i++)
+			result.add(buffer.getInt());
+
+		return result;
+	}
+
+	/**
+	 * Helper function which reads one Recipe.
+	 * @param buffer the snapshot contents, positioned at the start of the Recipe.
+	 * @param headerOnly true if the Recipe is stored header-only.
+	 * @param bodySource the RecipeBodySource for header-only Recipes.
+	 * @return the restored Recipe.
+	 */
+	private static Recipe readRecipe(ByteBuffer buffer, boolean headerOnly, RecipeBodySource bodySource) {
+		int recipeId = buffer.getInt();
+		String name = readString(buffer);
+		String author = readString(buffer);
+		RecipeTime recipeTime = new RecipeTime(buffer.getShort(), buffer.getShort(), buffer.getShort());
+		byte numOfServings = buffer.get();
+
+		int boxCount = buffer.getShort();
+		List<Short> boxes = new ArrayList<Short>(boxCount);
+		for (int i = 0; i < boxCount; i++)
+			boxes.add(buffer.getShort());
+
+		int linkedCount = buffer.getShort();
+		List<Integer> linkedRecipes = new ArrayList<Integer>(linkedCount);
+		for (int i = 0; i < linkedCount; i++)
+			linkedRecipes.add(buffer.getInt());
+
+		if (headerOnly) {
+			int bodyOffset = buffer.getInt();
+
+			int nameCount = buffer.getShort();
+			List<String> ingredientNames = new ArrayList<String>(nameCount);
+			for (int i = 0; i < nameCount; i++)
+				ingredientNames.add(readString(buffer));
+
+			return new Recipe(recipeId, name, author, ingredientNames, linkedRecipes, boxes, recipeTime, numOfServings, bodySource, bodyOffset);
+		}
+
+		int ingredientCount = buffer.getShort();
+		List<RecipeIngredient> ingredients = new ArrayList<RecipeIngredient>(ingredientCount);
+		for (int i = 0; i < ingredientCount; i++)
+			ingredients.add(new RecipeIngredient(readString(buffer), readString(buffer), readString(buffer), readString(buffer)));
+
+		int directionCount = buffer.getShort();
+		List<RecipeDirection> directions = new ArrayList<RecipeDirection>(directionCount);
+		for (int i = 0; i < directionCount; i++)
+			directions.add(new RecipeDirection(readString(buffer)));
+
+		return new Recipe(recipeId, name, author, ingredients, directions, linkedRecipes, boxes, recipeTime, numOfServings);
+	}
+
+	/**
+	 * Helper function which reads a length-prefixed UTF-8 String.
+	 * @param buffer the snapshot contents, positioned at the String length.
+	 * @return the decoded String.
+	 */
+	private static String readString(ByteBuffer buffer) {
+		int length = buffer.getInt();
+		String result = RecipePack.decode(buffer.array(), buffer.arrayOffset() + buffer.position(), length);
+		buffer.position(buffer.position() + length);
+
+		return result;
+	}
+
+	/**
+	 * Helper function which writes a search index.
+	 * @param out the snapshot output.
+	 * @param indexMap maps search word to PostingList of recipeId's.
+	 * @throws IOException if the output cannot be written.
+	 */
+	private static void writeIndex(DataOutputStream out, Map<String, PostingList> indexMap) throws IOException {
+		out.writeInt(indexMap.size());
+		for (Map.Entry<String, PostingList> entry : indexMap.entrySet()) {
+			writeString(out, entry.getKey());
+			entry.getValue().write(out);
+		}
+	}
+
+	/**
+	 * Helper function which writes a Set of recipeId's.
+	 * @param out the snapshot output.
+	 * @param postings the Set of recipeId's.
+	 * @throws IOException if the output cannot be written.
+	 */
+	private static void writePostings(DataOutputStream out, Set<Integer> postings) throws IOException {
+		out.writeInt(postings.size());
+		for (int recipeId : postings)
+			out.writeInt(recipeId);
+	}
+
+	/**
+	 * Helper function which writes a RecipeBitSet of recipeId's, in ascending order.
+	 * @param out the snapshot output.
+	 * @param postings the RecipeBitSet of recipeId's.
+	 * @throws IOException if the output cannot be written.
+	 */
+	private static void writePostings(DataOutputStream out, RecipeBitSet postings) throws IOException {
+		int[] recipeIds = postings.toArray();
+		out.writeInt(recipeIds.length);
+		for (int recipeId : recipeIds)
+			out.writeInt(recipeId);
+	}
+
+	/**
+	 * Helper function which writes one Recipe.
+	 * @param out the snapshot output.
+	 * @param recipe the Recipe to write.
+	 * @param headerOnly true to write the header and body offset only.
+	 * @throws IOException if the output cannot be written.
+	 */
+	private static void writeRecipe(DataOutputStream out, Recipe recipe, boolean headerOnly) throws IOException {
+		out.writeInt(recipe.recipeId);
+		writeString(out, recipe.name);
+		writeString(out, recipe.author);
+		out.writeShort(recipe.recipeTime.prepTimeInMin);
+		out.writeShort(recipe.recipeTime.inactivePrepTimeInMin);
+		out.writeShort(recipe.recipeTime.cookTimeInMin);
+		out.writeByte(recipe.numOfServings);
+
+		out.writeShort(recipe.boxes.size());
+		for (short boxId : recipe.boxes)
+			out.writeShort(boxId);
+
+		out.writeShort(recipe.linkedRecipes.size());
+		for (int linkedId : recipe.linkedRecipes)
+			out.writeInt(linkedId);
+
+		if (headerOnly) {
+			out.writeInt(recipe.bodyOffset);
+
+			List<String> ingredientNames = recipe.getIngredientNames();
+			out.writeShort(ingredientNames.size());
+			for (String s : ingredientNames)
+				writeString(out, s);
+
+			return;
+		}
+
+		List<RecipeIngredient> ingredients = recipe.getIngredients();
+		out.writeShort(ingredients.size());
+		for (RecipeIngredient ri : ingredients) {
+			writeString(out, ri.amount);
+			writeString(out, ri.measurement);
+			writeString(out, ri.ingredientName);
+			writeString(out, ri.notes);
+		}
+
+		List<RecipeDirection> directions = recipe.getDirections();
+		out.writeShort(directions.size());
+		for (RecipeDirection rd : directions)
+			writeString(out, rd.direction);
+	}
+
+	/**
+	 * Helper function which writes a length-prefixed UTF-8 String.
+	 * @param out the snapshot output.
+	 * @param string the String to write, null is written as the empty String.
+	 * @throws IOException if the output cannot be written.
+	 */
+	private static void writeString(DataOutputStream out, String string) throws IOException {
+		byte[] bytes = (string == null) ? new byte[0] : string.getBytes(UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+}
@@ -0,0 +1,148 @@
+package com.companyx.android.cookingxp;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.companyx.android.cookingxp.RecipeDatabase.Recipe;
+
+/**
+ * Recipe Store
+ *
+ * Maps recipeId's to Recipes with plain array lookups, so finding a Recipe neither boxes nor hashes its recipeId.
+ * recipeId's are dense within a recipe pack, numbered from the start of the pack's range, but the ranges of different packs lie far apart.
+ * The store therefore keeps one page per pack: a Recipe array indexed by the recipeId within the pack's range, grown as higher recipeId's arrive.
+ * A sparse set of packs only costs one null page reference per unused packId, and unloading a pack drops its page as a whole.
+ *
+ * @author James Chin <jameslchin@gmail.com>
+ */
+final class RecipeStore {
+	// CONSTANTS
+	private static final int PAGE_MASK = (1 << RecipeDatabase.PACK_ID_SHIFT) - 1;
+	private static final int INITIAL_CAPACITY = 16;
+
+	// STATE VARIABLES
+	private Recipe[][] pages = new Recipe[1][]; // indexed by packId, null for packs without Recipes
+	private int[] pageCounts = new int[1]; // number of Recipes in each page
+	private int size;
+
+	/**
+	 * Returns the Recipe with the specified recipeId.
+	 * @param recipeId the unique identifier of the Recipe.
+	 * @return the Recipe, null if there is none or the recipeId is invalid.
+	 */
+	Recipe get(int recipeId) {
+		if (recipeId < 0)
+			return null;
+
+		int packId = recipeId >> RecipeDatabase.PACK_ID_SHIFT;
+		if (packId >= pages.length)
+			return null;
+
+		Recipe[] page = pages[packId];
+		int index = recipeId & PAGE_MASK;
+
+		return (page == null || index >= page.length) ? null : page[index];
+	}
+
+	/**
+	 * Returns true if the store holds no Recipes.
+	 * @return true if the store holds no Recipes, false otherwise.
+	 */
+	boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Stores a Recipe under its recipeId, replacing any Recipe with the same recipeId.
+	 * @param recipe the Recipe to store, with a non-negative recipeId.
+	 * @return the replaced Recipe, null if there was none.
+	 */
+	Recipe put(Recipe recipe) {
+		int recipeId = recipe.recipeId;
+		if (recipeId < 0)
+			throw new IllegalArgumentException("negative recipeId: " + recipeId);
+
+		int packId = recipeId >> RecipeDatabase.PACK_ID_SHIFT;
+		int index = recipeId & PAGE_MASK;
+
+		// grow the page table to the packId, then the page to the index
+		if (packId >= pages.length) {
+			Recipe[][] newPages = new Recipe[packId + 1][];
+			int[] newPageCounts = new int[packId + 1];
+			System.arraycopy(pages, 0, newPages, 0, pages.length);
+			System.arraycopy(pageCounts, 0, newPageCounts, 0, pageCounts.length);
+			pages = newPages;
+			pageCounts = newPageCounts;
+		}
+
+		Recipe[] page = pages[packId];
+		if (page == null || index >= page.length) {
+			int capacity = (page == null) ? INITIAL_CAPACITY : page.length * 2;
+			capacity = Math.min(Math.max(capacity, index + 1), PAGE_MASK + 1);
+			Recipe[] newPage = new Recipe[capacity];
+			if (page != null)
+				System.arraycopy(page, 0, newPage, 0, page.length);
+			page = newPage;
+			pages[packId] = page;
+		}
+
+		Recipe previous = page[index];
+		page[index] = recipe;
+		if (previous == null) {
+			pageCounts[packId]++;
+			size++;
+		}
+
+		return previous;
+	}
+
+	/**
+	 * Removes all Recipes of a pack.
+	 * @param packId the unique identifier of the pack.
+	 * @return the removed Recipes in recipeId order, null if the pack has no Recipes.
+	 */
+	List<Recipe> removePack(int packId) {
+		if (packId < 0 || packId >= pages.length || pages[packId] == null)
+			return null;
+
+		List<Recipe> result = new ArrayList<Recipe>(pageCounts[packId]);
+		for (Recipe recipe : pages[packId]) {
+			if (recipe != null)
+				result.add(recipe);
+		}
+
+		size -= pageCounts[packId];
+		pages[packId] = null;
+		pageCounts[packId] = 0;
+
+		return result;
+	}
+
+	/**
+	 * Returns the number of Recipes in the store.
+	 * @return the number of Recipes.
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * Returns all Recipes in the store.
+	 * @return a new List of all Recipes, in recipeId order.
+	 */
+	List<Recipe> values() {
+		List<Recipe> result = new ArrayList<Recipe>(size);
+
+		for (Recipe[] page : pages) {
+			if (page == null)
+				continue;
+
+			for (Recipe recipe : page) {
+				if (recipe != null)
+					result.add(recipe);
+			}
+		}
+
+		return result;
+	}
+}
@@ -0,0 +1,68 @@
+package com.companyx.android.cookingxp;
+
+import java.util.List;
+
+import android.app.SearchManager;
+import android.content.ContentProvider;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.net.Uri;
+import android.provider.BaseColumns;
+
+/**
+ * Recipe Suggestion Provider
+ *
+ * Supplies search-as-you-type suggestions to the search dialog, completing the last typed word from the search index of the RecipeDatabase.
+ * Picking a suggestion sends the completed search to SelectRecipeActivity like a typed search.
+ * No suggestions are offered until the Recipes are loaded, so typing never waits for loading.
+ *
+ * @author James Chin <jameslchin@gmail.com>
+ */
+public class RecipeSuggestionProvider extends ContentProvider {
+	// CONSTANTS
+	public static final String AUTHORITY = "com.companyx.android.cookingxp.RecipeSuggestionProvider";
+	private static final int MAX_SUGGESTIONS = 8;
+	private static final String[] COLUMNS = {BaseColumns._ID, SearchManager.SUGGEST_COLUMN_TEXT_1, SearchManager.SUGGEST_COLUMN_QUERY};
+
+	@Override
+	public boolean onCreate() {
+		return true;
+	}
+
+	@Override
+	public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder) {
+		MatrixCursor result = new MatrixCursor(COLUMNS);
+
+		RecipeDatabase recipeDatabase = RecipeDatabase.getInstance(getContext());
+		String query = (selectionArgs != null && selectionArgs.length > 0) ? selectionArgs[0] : uri.getLastPathSegment();
+		if (!recipeDatabase.isReady() || query == null || query.equals(SearchManager.SUGGEST_URI_PATH_QUERY))
+			return result;
+
+		List<String> suggestions = recipeDatabase.suggestSearches(query, MAX_SUGGESTIONS);
+		for (int i = 0; i < suggestions.size(); i++)
+			result.addRow(new Object[] {i, suggestions.get(i), suggestions.get(i)});
+
+		return result;
+	}
+
+	@Override
+	public String getType(Uri uri) {
+		return SearchManager.SUGGEST_MIME_TYPE;
+	}
+
+	@Override
+	public Uri insert(Uri uri, ContentValues values) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public int delete(Uri uri, String selection, String[] selectionArgs) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public int update(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
+		throw new UnsupportedOperationException();
+	}
+}
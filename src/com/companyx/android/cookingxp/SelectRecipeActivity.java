@@ -23,6 +23,7 @@ import android.widget.TextView;
 import android.widget.Toast;
 
 import com.companyx.android.cookingxp.RecipeDatabase.Recipe;
+import com.companyx.android.cookingxp.RecipeDatabase.RecipePage;
 import com.companyx.android.cookingxp.RecipeDatabase.ShoppingList;
 
 /**
@@ -35,6 +36,8 @@ import com.companyx.android.cookingxp.RecipeDatabase.ShoppingList;
 public class SelectRecipeActivity extends BaseListActivity {
 	// CONSTANTS
 	private static final int[] RECIPE_CATEGORIES = { R.string.select_recipe_all_recipes, R.string.chicken, R.string.pork, R.string.beef, R.string.select_recipe_seafood, R.string.select_recipe_vegetarian };
+	private static final int PAGE_SIZE = 50; // Recipes pulled from the RecipeDatabase at a time, a few screens full
+	private static final int PREFETCH_ROWS = 10; // rows before the end of the pulled Recipes at which the next page is pulled
 	
 	// VIEW HOLDERS
 	private LinearLayout layoutIngredients;
@@ -43,8 +46,16 @@ public class SelectRecipeActivity extends BaseListActivity {
 	private List<Recipe> recipes;
 	private String operation;
 	
+	/**
+	 * Source of the pages of a Recipe query, pulled by the list view adapter as the list scrolls.
+	 */
+	private interface RecipePageSource {
+		RecipePage getPage(int token, int pageSize);
+	}
+	
 	/**
 	 * Custom Recipe list view adapter.
+	 * Lists of paged queries start with their first page, and pull the next page once the user scrolls near the end, so only the rows scrolled to are ever fetched.
 	 */
 	private class RecipeListViewAdapter extends ArrayAdapter<Recipe> {
 		class RecipeView {
@@ -57,6 +68,9 @@ public class SelectRecipeActivity extends BaseListActivity {
 		
 		private final Context activity;
 		private final List<Recipe> recipes;
+		private RecipePageSource source; // null if all Recipes are listed
+		private int nextToken = RecipeDatabase.NO_MORE_PAGES;
+		private boolean pulling; // true while the next page is posted to be pulled
 		
 		RecipeListViewAdapter(Context activity, List<Recipe> recipes) {
 			super(activity, R.layout.recipe_list_item, recipes);
@@ -64,8 +78,37 @@ public class SelectRecipeActivity extends BaseListActivity {
 			this.recipes = recipes;
 		}
 		
+		RecipeListViewAdapter(Context activity, RecipePageSource source, RecipePage firstPage) {
+			this(activity, new ArrayList<Recipe>(firstPage.recipes));
+			this.source = source;
+			nextToken = firstPage.nextToken;
+		}
+		
+		/**
+		 * Appends the next page of Recipes to the list.
+		 */
+		private void pullNextPage() {
+			RecipePage page = source.getPage(nextToken, PAGE_SIZE);
+			recipes.addAll(page.recipes);
+			nextToken = page.nextToken;
+			pulling = false;
+			
+			notifyDataSetChanged();
+		}
+		
 		@Override
 		public View getView(int position, View convertView, ViewGroup parent) {
+			// PAGING, pull the next page near the end of the list, after the current layout pass as the list must not change during it
+			if (position >= recipes.size() - PREFETCH_ROWS && nextToken != RecipeDatabase.NO_MORE_PAGES && !pulling) {
+				pulling = true;
+				parent.post(new Runnable() {
+					@Override
+					public void run() {
+						pullNextPage();
+					}
+				});
+			}
+			
 	        View view = convertView;
 	        RecipeView recipeView = null;
 	 
@@ -209,43 +252,88 @@ public class SelectRecipeActivity extends BaseListActivity {
 		intent.removeExtra("operation");
 		intent.putExtra("category", category);
 		
-		List<String> searchStrings = new ArrayList<String>();
-		
-		if (category.equals(getString(R.string.select_recipe_all_recipes)))
-			recipes = recipeDatabase.allRecipes();
-		else if (category.equals(getString(R.string.pork))) {
-			searchStrings.add(getString(R.string.bacon));
-			searchStrings.add(getString(R.string.ham));
-			searchStrings.add(getString(R.string.pork));
-			recipes = recipeDatabase.searchSetRecipes(searchStrings);
-		} else if (category.equals(getString(R.string.beef))) {
-			searchStrings.add(getString(R.string.beef));
-			searchStrings.add(getString(R.string.steak));
-			recipes = recipeDatabase.searchSetRecipes(searchStrings);
-		} else if (category.equals(getString(R.string.select_recipe_seafood))) {
-			for (int i : RecipeDatabase.SEAFOOD)
-				searchStrings.add(getString(i));
-			recipes = recipeDatabase.searchSetRecipes(searchStrings);
-		} else if (category.equals(getString(R.string.select_recipe_vegetarian))) {
-			recipes = recipeDatabase.getVegetarianRecipes();
-		} else
-			recipes = recipeDatabase.searchRecipes(category);
+		// categories are precomputed by the RecipeDatabase, other categories are searched for
+		RecipePageSource source;
+		if (category.equals(getString(R.string.select_recipe_all_recipes))) {
+			source = new RecipePageSource() {
+				@Override
+				public RecipePage getPage(int token, int pageSize) {
+					return recipeDatabase.allRecipes(token, pageSize);
+				}
+			};
+		} else if (category.equals(getString(R.string.chicken)))
+			source = categoryPages(RecipeDatabase.CATEGORY_CHICKEN);
+		else if (category.equals(getString(R.string.pork)))
+			source = categoryPages(RecipeDatabase.CATEGORY_PORK);
+		else if (category.equals(getString(R.string.beef)))
+			source = categoryPages(RecipeDatabase.CATEGORY_BEEF);
+		else if (category.equals(getString(R.string.select_recipe_seafood)))
+			source = categoryPages(RecipeDatabase.CATEGORY_SEAFOOD);
+		else if (category.equals(getString(R.string.select_recipe_vegetarian)))
+			source = categoryPages(RecipeDatabase.CATEGORY_VEGETARIAN);
+		else
+			source = queryPages(category, false);
 		
-		setListAdapter(new RecipeListViewAdapter(this, recipes));
+		RecipePage page = setListPages(source);
 		
 		// COUNT NOTIFICATION
-		Toast.makeText(getApplicationContext(), getString(R.string.select_recipe_showing) + " " + recipes.size() + " " + getString(R.string.select_recipe_recipes), Toast.LENGTH_SHORT).show();
+		Toast.makeText(getApplicationContext(), getString(R.string.select_recipe_showing) + " " + page.totalCount + " " + getString(R.string.select_recipe_recipes), Toast.LENGTH_SHORT).show();
+	}
+	
+	/**
+	 * Helper function which returns the source of the pages of a Recipe category.
+	 * @param category the category, one of the RecipeDatabase CATEGORY constants.
+	 * @return the source of the pages of the category.
+	 */
+	private RecipePageSource categoryPages(final int category) {
+		return new RecipePageSource() {
+			@Override
+			public RecipePage getPage(int token, int pageSize) {
+				return recipeDatabase.getRecipesByCategory(category, token, pageSize);
+			}
+		};
+	}
+	
+	/**
+	 * Helper function which returns the source of the pages of a search, a boolean query such as "chicken -bacon (rice OR noodles)".
+	 * @param query the search query.
+	 * @param fuzzy true to tolerate misspelled search words.
+	 * @return the source of the pages of the search.
+	 */
+	private RecipePageSource queryPages(final String query, final boolean fuzzy) {
+		return new RecipePageSource() {
+			@Override
+			public RecipePage getPage(int token, int pageSize) {
+				return recipeDatabase.queryRecipes(query, fuzzy, token, pageSize);
+			}
+		};
+	}
+	
+	/**
+	 * Helper function which lists the Recipes of a paged query, pulling only its first page for now.
+	 * @param source the source of the pages of the query.
+	 * @return the first page.
+	 */
+	private RecipePage setListPages(RecipePageSource source) {
+		RecipePage page = source.getPage(RecipeDatabase.FIRST_PAGE, PAGE_SIZE);
+		setListAdapter(new RecipeListViewAdapter(this, source, page));
+		
+		return page;
 	}
 	
 	/**
 	 * Load favorite recipes from the RecipeDatabase, sorted by Recipe name.
 	 */
 	private void loadFavoriteRecipes() {
-		recipes = recipeDatabase.getFavoriteRecipes();
-		setListAdapter(new RecipeListViewAdapter(this, recipes));
+		RecipePage page = setListPages(new RecipePageSource() {
+			@Override
+			public RecipePage getPage(int token, int pageSize) {
+				return recipeDatabase.getFavoriteRecipes(token, pageSize);
+			}
+		});
 		
 		// EMPTY NOTIFICATION
-		if (recipes.size() == 0)
+		if (page.totalCount == 0)
 			new AlertDialog.Builder(this).setTitle(R.string.select_recipe_favorites_alert_title).setMessage(R.string.select_recipe_favorites_empty).setPositiveButton(R.string.select_recipe_favorites_empty_ok, null).show();
 	}
 	
@@ -254,11 +342,14 @@ public class SelectRecipeActivity extends BaseListActivity {
 	 * @param query the user-specified search query.
 	 */
 	private void loadSearchRecipes(String query) {
-		recipes = recipeDatabase.searchRecipes(query);
-		setListAdapter(new RecipeListViewAdapter(this, recipes));
+		RecipePage page = setListPages(queryPages(query, false));
+		
+		// retry tolerating typos, i.e. "chiken"
+		if (page.totalCount == 0)
+			page = setListPages(queryPages(query, true));
 		
 		// COUNT NOTIFICATION
-		Toast.makeText(getApplicationContext(), getString(R.string.select_recipe_showing) + " " + recipes.size() + " " + getString(R.string.select_recipe_recipes), Toast.LENGTH_SHORT).show();
+		Toast.makeText(getApplicationContext(), getString(R.string.select_recipe_showing) + " " + page.totalCount + " " + getString(R.string.select_recipe_recipes), Toast.LENGTH_SHORT).show();
 	}
 	
 	/**
@@ -298,7 +389,16 @@ public class SelectRecipeActivity extends BaseListActivity {
 		setContentView(R.layout.activity_select_recipe);
 		
 		initialize();
-		handleIntent(getIntent());
+		
+		// render once Recipes are loaded and unlocked, using the Intent current at that time
+		RecipeActivity.addTextLine(getString(R.string.loading_recipes), layoutIngredients, this, scalingFactor);
+		gameData.whenReady(new Runnable() {
+			@Override
+			public void run() {
+				if (!isFinishing())
+					handleIntent(getIntent());
+			}
+		});
 	}
 	
 	@Override
@@ -307,7 +407,8 @@ public class SelectRecipeActivity extends BaseListActivity {
 		
 		// singleTop flag set in manifest; handle when the user searches from this Activity and sends new search Intent to itself without restarting
 		setIntent(intent);
-		handleIntent(intent);
+		if (gameData.isReady())
+			handleIntent(intent);
 	}
 
 	@Override
@@ -315,7 +416,8 @@ public class SelectRecipeActivity extends BaseListActivity {
 		super.onRestart();
 		
 		// update results when user navigates away and returns to this Activity
-		handleIntent(getIntent());
+		if (gameData.isReady())
+			handleIntent(getIntent());
 		
 	}
 }
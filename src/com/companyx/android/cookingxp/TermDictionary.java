@@ -0,0 +1,309 @@
+package com.companyx.android.cookingxp;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Term Dictionary
+ *
+ * Sorted dictionary of the search index terms and their document frequencies, for prefix completion.
+ * The terms sharing a prefix form one contiguous range of the sorted terms, found with two binary searches.
+ * The most frequent terms of the range are selected with a bounded heap, so a completion costs one pass over the range and never sorts it.
+ * The terms are the index's own String instances, so for completion the dictionary only adds the sorted references and one int per term.
+ *
+ * FUZZY MATCHING:
+ * Terms within an edit distance of a word are found by walking the sorted terms like a trie, with one row of the Levenshtein table per term character.
+ * Consecutive terms share the rows of their common prefix, and once no extension of a prefix can come within the distance, all terms with that prefix are skipped.
+ * The length of the prefix each term shares with the previous one is stored at build time, so skipping reads one byte per term and reuse never compares Strings.
+ * The walk therefore only visits prefixes close to the word, not the whole dictionary.
+ * It reads the term characters from one packed array rather than from each String, as visiting scattered String instances costs a cache miss per term.
+ *
+ * @author James Chin <jameslchin@gmail.com>
+ */
+final class TermDictionary {
+	// STATE VARIABLES
+	private final String[] terms; // ascending
+	private final int[] documentFrequencies; // number of recipes containing each term
+	private final byte[] sharedPrefixLengths; // length of the prefix each term shares with the previous term, at most Byte.MAX_VALUE
+	private final char[] termChars; // characters of all terms in ascending order, for the fuzzy walk
+	private final int[] termOffsets; // start of each term in termChars, followed by the total number of characters
+	private final int maxLength; // length of the longest term
+
+	/**
+	 * Constructor, builds the dictionary of a search index.
+	 * @param indexMap maps search word to PostingList of recipeId's.
+	 */
+	TermDictionary(Map<String, PostingList> indexMap) {
+		terms = indexMap.keySet().toArray(new String[indexMap.size()]);
+		Arrays.sort(terms);
+
+		documentFrequencies = new int[terms.length];
+		sharedPrefixLengths = new byte[terms.length];
+		int longest = 0;
+		for (int i = 0; i < terms.length; i++) {
+			documentFrequencies[i] = indexMap.get(terms[i]).size();
+			if (i > 0)
+				sharedPrefixLengths[i] = (byte) Math.min(commonPrefixLength(terms[i - 1], terms[i]), Byte.MAX_VALUE);
+			longest = Math.max(longest, terms[i].length());
+		}
+		maxLength = longest;
+
+		// PACK the term characters contiguously, in term order
+		termOffsets = new int[terms.length + 1];
+		for (int i = 0; i < terms.length; i++)
+			termOffsets[i + 1] = termOffsets[i] + terms[i].length();
+		termChars = new char[termOffsets[terms.length]];
+		for (int i = 0; i < terms.length; i++)
+			terms[i].getChars(0, terms[i].length(), termChars, termOffsets[i]);
+	}
+
+	/**
+	 * Returns the most frequent terms starting with a prefix, most frequent first and alphabetical among equally frequent terms.
+	 * @param prefix the lowercase prefix.
+	 * @param limit the largest number of terms to return.
+	 * @return the completions, at most limit terms.
+	 */
+	List<String> complete(String prefix, int limit) {
+		int from = lowerBound(prefix);
+		int to = upperBound(prefix, from);
+		if (limit <= 0 || from == to)
+			return Collections.emptyList();
+
+		// SELECT, min-heap of term positions keyed on frequency, so its root is the weakest term kept
+		int[] heap = new int[Math.min(limit, to - from)];
+		int size = 0;
+		for (int i = from; i < to; i++) {
+			if (size < heap.length) {
+				heap[size++] = i;
+				siftUp(heap, size - 1);
+			} else if (weaker(heap[0], i)) {
+				heap[0] = i;
+				siftDown(heap, size);
+			}
+		}
+
+		// ORDER, popping the weakest term last-to-first
+		String[] result = new String[size];
+		while (size > 0) {
+			result[size - 1] = terms[heap[0]];
+			heap[0] = heap[--size];
+			siftDown(heap, size);
+		}
+
+		return Arrays.asList(result);
+	}
+
+	/**
+	 * Returns the document frequency of a term.
+	 * @param term the term.
+	 * @return the number of recipes containing the term, 0 if it is not in the dictionary.
+	 */
+	int documentFrequency(String term) {
+		int i = Arrays.binarySearch(terms, term);
+
+		return (i < 0) ? 0 : documentFrequencies[i];
+	}
+
+	/**
+	 * Returns the terms within an edit distance of a word, closest first and most frequent first among equally close terms.
+	 * The edit distance counts inserted, deleted and substituted characters.
+	 * @param word the lowercase word.
+	 * @param maxDistance the largest edit distance.
+	 * @param limit the largest number of terms to return.
+	 * @return the matching terms, at most limit terms.
+	 */
+	List<String> fuzzy(String word, int maxDistance, int limit) {
+		int n = word.length();
+		int[][] rows = new int[maxLength + 1][n + 1]; // rows[d] is the Levenshtein row after the first d characters of the current term
+		for (int j = 0; j <= n; j++)
+			rows[0][j] = j;
+
+		List<int[]> matches = new ArrayList<int[]>(); // pairs of term position and distance
+		int validRows = 0; // rows[1..validRows] hold a prefix of the previously visited term
+
+		int i = 0;
+		walk:
+		while (i < terms.length) {
+			int start = termOffsets[i];
+			int length = termOffsets[i + 1] - start;
+
+			// reuse the rows of the prefix shared with the previously visited term; the skipped terms all share at least validRows characters with it
+			int depth = Math.min(validRows, sharedPrefixLengths[i]);
+
+			for (int d = depth + 1; d <= length; d++) {
+				char c = termChars[start + d - 1];
+				int[] above = rows[d - 1];
+				int[] row = rows[d];
+
+				// only the band of cells within maxDistance of the diagonal can stay within the distance, the cells bordering it are capped
+				int low = Math.max(1, d - maxDistance);
+				int high = Math.min(n, d + maxDistance);
+				row[low - 1] = (low == 1) ? d : maxDistance + 1;
+				if (high < n)
+					row[high + 1] = maxDistance + 1;
+
+				int rowMin = row[low - 1];
+				for (int j = low; j <= high; j++) {
+					int cost = (word.charAt(j - 1) == c) ? 0 : 1;
+					row[j] = Math.min(Math.min(row[j - 1] + 1, above[j] + 1), above[j - 1] + cost);
+					rowMin = Math.min(rowMin, row[j]);
+				}
+
+				// PRUNE, no term starting with this prefix can come within the distance
+				if (rowMin > maxDistance) {
+					validRows = d;
+					do
+						i++;
+					while (i < terms.length && sharedPrefixLengths[i] >= d);
+					continue walk;
+				}
+			}
+
+			validRows = length;
+			int distance = rows[length][n];
+			if (Math.abs(length - n) <= maxDistance && distance <= maxDistance)
+				matches.add(new int[] {i, distance});
+			i++;
+		}
+
+		// ORDER by distance, then frequency
+		Collections.sort(matches, new Comparator<int[]>() {
+			@Override
+			public int compare(int[] a, int[] b) {
+				if (a[1] != b[1])
+					return a[1] - b[1];
+
+				return weaker(a[0], b[0]) ? 1 : -1;
+			}
+		});
+
+		List<String> result = new ArrayList<String>(Math.min(limit, matches.size()));
+		for (int k = 0; k < matches.size() && k < limit; k++)
+			result.add(terms[matches.get(k)[0]]);
+
+		return result;
+	}
+
+	/**
+	 * Returns the terms of the dictionary.
+	 * @return the terms in ascending order, not to be modified.
+	 */
+	String[] terms() {
+		return terms;
+	}
+
+	/**
+	 * Helper function which returns the length of the common prefix of two Strings.
+	 * @param a one String.
+	 * @param b the other String.
+	 * @return the number of leading characters the Strings share.
+	 */
+	private static int commonPrefixLength(String a, String b) {
+		int length = Math.min(a.length(), b.length());
+		int i = 0;
+		while (i < length && a.charAt(i) == b.charAt(i))
+			i++;
+
+		return i;
+	}
+
+	/**
+	 * Helper function which compares two term positions for the heap: the less frequent term first, and the alphabetically later term first among equally frequent terms.
+	 * @param a the position of one term.
+	 * @param b the position of the other term.
+	 * @return true if term a is weaker than term b.
+	 */
+	private boolean weaker(int a, int b) {
+		if (documentFrequencies[a] != documentFrequencies[b])
+			return documentFrequencies[a] < documentFrequencies[b];
+
+		return a > b;
+	}
+
+	/**
+	 * Helper function which returns the position of the first term not below a prefix.
+	 * @param prefix the prefix.
+	 * @return the position of the first term starting with the prefix, if any.
+	 */
+	private int lowerBound(String prefix) {
+		int low = 0;
+		int high = terms.length;
+
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (terms[mid].compareTo(prefix) < 0)
+				low = mid + 1;
+			else
+				high = mid;
+		}
+
+		return low;
+	}
+
+	/**
+	 * Helper function which moves a heap entry up to its place.
+	 * @param heap the heap of term positions.
+	 * @param i the index of the entry.
+	 */
+	private void siftUp(int[] heap, int i) {
+		while (i > 0) {
+			int parent = (i - 1) >>> 1;
+			if (!weaker(heap[i], heap[parent]))
+				break;
+
+			int swap = heap[i];
+			heap[i] = heap[parent];
+			heap[parent] = swap;
+			i = parent;
+		}
+	}
+
+	/**
+	 * Helper function which moves the heap root down to its place.
+	 * @param heap the heap of term positions.
+	 * @param size the number of entries in the heap.
+	 */
+	private void siftDown(int[] heap, int size) {
+		int i = 0;
+
+		while (true) {
+			int child = 2 * i + 1;
+			if (child >= size)
+				break;
+			if (child + 1 < size && weaker(heap[child + 1], heap[child]))
+				child++;
+			if (!weaker(heap[child], heap[i]))
+				break;
+
+			int swap = heap[i];
+			heap[i] = heap[child];
+			heap[child] = swap;
+			i = child;
+		}
+	}
+
+	/**
+	 * Helper function which returns the position after the last term starting with a prefix.
+	 * @param prefix the prefix.
+	 * @param from the position of the first term not below the prefix.
+	 * @return the position after the last term starting with the prefix.
+	 */
+	private int upperBound(String prefix, int from) {
+		int low = from;
+		int high = terms.length;
+
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (terms[mid].startsWith(prefix))
+				low = mid + 1;
+			else
+				high = mid;
+		}
+
+		return low;
+	}
+}
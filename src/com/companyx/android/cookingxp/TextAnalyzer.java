@@ -0,0 +1,142 @@
+package com.companyx.android.cookingxp;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Text Analyzer
+ *
+ * Turns Recipe names, ingredient names and search queries into search index terms, so that indexing and searching agree on what a word is.
+ * Sharing one analysis keeps "Bacon," "bacon" and "BACON" one index key, and lets "apples" find recipes calling for an "apple".
+ *
+ * PIPELINE:
+ * tokenize: words are runs of letters, so punctuation, digits and hyphens separate words, i.e. "t-bone" yields "t" and "bone"
+ * fold: words are lowercased one char at a time, independent of the default Locale
+ * filter: words shorter than MIN_TERM_LENGTH and stop words are dropped
+ * stem: plurals are folded to their singular with a few suffix rules, i.e. "cookies" to "cookie", "fries" to "fry", "tomatoes" to "tomato", "peaches" to "peach", "apples" to "apple"
+ *
+ * The stemmer is deliberately light: it only strips plural endings, never derivational ones, so an index term is always close to a word a user would type.
+ * Each word is folded and stemmed in one scratch buffer per call, so analysis allocates only the resulting term Strings.
+ * Analyzing a term again yields the same term.
+ *
+ * @author James Chin <jameslchin@gmail.com>
+ */
+final class TextAnalyzer {
+	// CONSTANTS
+	static final int VERSION = 2; // identifies the analysis, part of the warm-start snapshot key so snapshots of another analysis are rebuilt
+	static final int MIN_TERM_LENGTH = 2;
+	private static final int MIN_STEM_LENGTH = 4; // shorter words are never stemmed, i.e. "gas", "pus"
+	private static final int MAX_Y_ROOT_LENGTH = 2; // "ies" after a root this short was a "y", i.e. "fries", "flies"; after a longer root it is an "ie" plural, i.e. "cookies", "brownies"
+	private static final Set<String> STOP_WORDS = new HashSet<String>(Arrays.asList(
+			"an", "and", "at", "by", "for", "from", "in", "into", "of", "on", "or", "the", "to", "with")); // none end in 's', so they need no stemming
+
+	/**
+	 * Private constructor, static utility class.
+	 */
+	private TextAnalyzer() {
+	}
+
+	/**
+	 * Returns the index terms of a text.
+	 * @param text the text, such as a Recipe name, an ingredient name or a search query.
+	 * @return a new List of the terms in text order, including repeated terms.
+	 */
+	static List<String> analyze(String text) {
+		List<String> result = new ArrayList<String>();
+		analyze(text, result);
+
+		return result;
+	}
+
+	/**
+	 * Adds the index terms of a text to a Collection.
+	 * @param text the text, such as a Recipe name, an ingredient name or a search query.
+	 * @param terms the Collection to add the terms to, in text order.
+	 */
+	static void analyze(String text, Collection<String> terms) {
+		int length = text.length();
+		char[] buffer = null;
+
+		int i = 0;
+		while (i < length) {
+			// TOKENIZE, skip to the next run of letters
+			while (i < length && !Character.isLetter(text.charAt(i)))
+				i++;
+
+			int start = i;
+			while (i < length && Character.isLetter(text.charAt(i)))
+				i++;
+
+			int wordLength = i - start;
+			if (wordLength < MIN_TERM_LENGTH)
+				continue;
+
+			// FOLD into the scratch buffer
+			if (buffer == null)
+				buffer = new char[length];
+			for (int j = 0; j < wordLength; j++)
+				buffer[j] = Character.toLowerCase(text.charAt(start + j));
+
+			// STEM, then FILTER
+			String term = new String(buffer, 0, stem(buffer, wordLength));
+			if (!STOP_WORDS.contains(term))
+				terms.add(term);
+		}
+	}
+
+	/**
+	 * Returns the index term form of one word: folded and stemmed as in analyze(), but never filtered.
+	 * Used for a partially typed word, which may be a stop word or too short so far and still complete to an index term.
+	 * @param word the word, a run of letters.
+	 * @return the folded and stemmed word.
+	 */
+	static String normalize(String word) {
+		int length = word.length();
+		char[] buffer = new char[length];
+		for (int i = 0; i < length; i++)
+			buffer[i] = Character.toLowerCase(word.charAt(i));
+
+		return new String(buffer, 0, stem(buffer, length));
+	}
+
+	/**
+	 * Helper function which folds a lowercase plural word to its singular in place.
+	 * Words ending in "ss", "us" or "is", such as "glass", "asparagus" or "hummus", are singular already.
+	 * Plurals in "ies" keep their "ie" unless the root is too short to be a word, so "cookies" does not become "cooky"; the price is that "berries" folds to "berrie" rather than "berry".
+	 * @param word the buffer holding the word from index 0.
+	 * @param length the length of the word.
+	 * @return the length of the stem, which starts at index 0 of the buffer.
+	 */
+	private static int stem(char[] word, int length) {
+		if (length < MIN_STEM_LENGTH || word[length - 1] != 's')
+			return length;
+
+		char second = word[length - 2];
+		if (second == 's' || second == 'u' || second == 'i')
+			return length;
+
+		if (second == 'e' && length > MIN_STEM_LENGTH) {
+			char third = word[length - 3];
+			char fourth = word[length - 4];
+
+			// fries, cries, but not "ies" following a vowel as in "aies", "eies"; longer words keep the "ie", as in cookies, smoothies, series
+			if (third == 'i') {
+				if (length - 3 <= MAX_Y_ROOT_LENGTH && fourth != 'a' && fourth != 'e') {
+					word[length - 3] = 'y';
+					return length - 2;
+				}
+				return length - 1;
+			}
+
+			// tomatoes, boxes, peaches, radishes, glasses
+			if (third == 'o' || third == 'x' || (third == 'h' && (fourth == 'c' || fourth == 's')) || (third == 's' && fourth == 's'))
+				return length - 2;
+		}
+
+		return length - 1;
+	}
+}
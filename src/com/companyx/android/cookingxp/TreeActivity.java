@@ -291,6 +291,17 @@ public class TreeActivity extends BaseActivity {
 		
 		treeList = gameData.getTrees();
 		initializeSpinner();
+		
+		// the Tree renders without Recipes; rebuild an open PopupWindow once its Recipes can be listed
+		gameData.whenReady(new Runnable() {
+			@Override
+			public void run() {
+				for (View view : new ArrayList<View>(openPopups.keySet())) {
+					openPopups.remove(view).dismiss();
+					showPopup(view);
+				}
+			}
+		});
 	}
 	
 	@Override
@@ -389,8 +400,13 @@ public class TreeActivity extends BaseActivity {
 		// break
 		layoutBoxPopup.addView(new View(this), new ViewGroup.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT, 12));
 		
-		// APPLICABLE RECIPES
-		for (Recipe recipe : recipeDatabase.getRecipesByBox(box.boxId)) {
+		// APPLICABLE RECIPES, listed once the RecipeDatabase is loaded
+		if (!gameData.isReady()) {
+			TextView tvLoading = new TextView(this);
+			tvLoading.setText(R.string.loading_recipes);
+			tvLoading.setTextColor(Color.LTGRAY);
+			layoutBoxPopup.addView(tvLoading);
+		} else for (Recipe recipe : recipeDatabase.getRecipesByBox(box.boxId)) {
 			TextView tvRecipe = new TextView(this);
 			tvRecipe.setText(recipe.name);
 			tvRecipe.setTextColor(Color.WHITE);